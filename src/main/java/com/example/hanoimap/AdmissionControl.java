@@ -0,0 +1,112 @@
+package com.example.hanoimap;
+import spark.Route;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+final class AdmissionControl {
+    private final Map<String, Limiter> limiters = new LinkedHashMap<>();
+    private final int threadBudget;
+    private final long queueTimeoutMs;
+    private final String retryAfterSeconds;
+    AdmissionControl(int threadBudget) {
+        this.threadBudget = threadBudget;
+        this.queueTimeoutMs = Long.parseLong(System.getenv().getOrDefault("ADMISSION_QUEUE_TIMEOUT_MS", "2000"));
+        this.retryAfterSeconds = System.getenv().getOrDefault("ADMISSION_RETRY_AFTER_SECONDS", "1");
+    }
+    void define(String name, int concurrency, int queueDepth) {
+        String spec = System.getenv("ADMISSION_" + name.toUpperCase());
+        if (spec != null && !spec.isBlank()) {
+            String[] parts = spec.split(":");
+            concurrency = Integer.parseInt(parts[0].trim());
+            queueDepth = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 0;
+        }
+        limiters.put(name, new Limiter(Math.max(1, concurrency), Math.max(0, queueDepth)));
+    }
+    int capacity() {
+        int total = 0;
+        for (Limiter limiter : limiters.values()) {
+            total += limiter.concurrency + limiter.queueDepth;
+        }
+        return total;
+    }
+    void validate() {
+        int total = capacity();
+        if (total > threadBudget) {
+            throw new IllegalStateException("Admission classes can hold " + total + " request threads but only " + threadBudget
+                    + " HTTP threads are available; lower ADMISSION_<CLASS> or raise HTTP_MAX_THREADS");
+        }
+    }
+    Route limit(String name, Route route) {
+        Limiter limiter = limiters.get(name);
+        if (limiter == null) {
+            throw new IllegalArgumentException("Unknown admission class: " + name);
+        }
+        return (req, res) -> {
+            if (!limiter.acquire(queueTimeoutMs)) {
+                res.status(503);
+                res.header("Retry-After", retryAfterSeconds);
+                res.type("application/json");
+                return "{\"error\":\"Server busy, retry later\"}";
+            }
+            try {
+                return route.handle(req, res);
+            } finally {
+                limiter.release();
+            }
+        };
+    }
+    Map<String, Stats> stats() {
+        Map<String, Stats> out = new LinkedHashMap<>();
+        for (Map.Entry<String, Limiter> entry : limiters.entrySet()) {
+            out.put(entry.getKey(), entry.getValue().stats());
+        }
+        return out;
+    }
+    private static final class Limiter {
+        private final int concurrency;
+        private final int queueDepth;
+        private final Semaphore permits;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        Limiter(int concurrency, int queueDepth) {
+            this.concurrency = concurrency;
+            this.queueDepth = queueDepth;
+            this.permits = new Semaphore(concurrency, true);
+        }
+        boolean acquire(long timeoutMs) {
+            if (permits.tryAcquire()) {
+                admitted.incrementAndGet();
+                return true;
+            }
+            if (waiting.incrementAndGet() > queueDepth) {
+                waiting.decrementAndGet();
+                rejected.incrementAndGet();
+                return false;
+            }
+            try {
+                if (permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                    admitted.incrementAndGet();
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waiting.decrementAndGet();
+            }
+            rejected.incrementAndGet();
+            return false;
+        }
+        void release() {
+            permits.release();
+        }
+        Stats stats() {
+            return new Stats(concurrency, queueDepth, concurrency - permits.availablePermits(), waiting.get(), admitted.get(), rejected.get());
+        }
+    }
+    record Stats(int concurrency, int queueDepth, int active, int waiting, long admitted, long rejected) {
+    }
+}
@@ -11,12 +11,14 @@ public class App {
         String osmFile = System.getenv().getOrDefault("OSM_PBF_FILE", dataDir + "/hanoi.osm.pbf");
         String graphDir = System.getenv().getOrDefault("GRAPH_CACHE_DIR", dataDir + "/graph-cache");
         spark.Spark.port(4567);
+        int maxThreads = Integer.parseInt(System.getenv().getOrDefault("HTTP_MAX_THREADS", "200"));
+        spark.Spark.threadPool(maxThreads, Math.min(8, maxThreads), 60000);
         spark.Spark.staticFiles.location("/public");  
         routingService = new RoutingService(osmFile, graphDir);
         routingService.init();
         System.out.println("Routing engine: " + routingService.getEngineName());
         benchmarkManager = new BenchmarkManager(routingService, dataDir);
-        new RoutingController(routingService, benchmarkManager).registerRoutes();
+        new RoutingController(routingService, benchmarkManager, maxThreads).registerRoutes();
         serverStarted = true;
         System.out.println("Server started at http://localhost:4567");
     }
@@ -101,10 +101,8 @@ public class BenchmarkManager {
                 File out = new File(benchmarkDir, "trips-" + runId + ".csv");
                 run.outputFile = out.getAbsolutePath();
                 Random rnd = new Random(seed);
-                RoutingEngine manual = new SimpleRoutingEngine(routingService.getOsmFile(), routingService.getGraphDir());
-                RoutingEngine gh = new GraphHopperRoutingEngine(routingService.getOsmFile(), routingService.getGraphDir());
-                manual.init();
-                gh.init();
+                RoutingEngine manual = routingService.awaitEngine("manual");
+                RoutingEngine gh = routingService.awaitEngine("graphhopper");
                 String base = baseEngine == null ? "manual" : baseEngine.toLowerCase();
                 RoutingEngine baseEng = base.equals("graphhopper") ? gh : manual;
                 RoutingEngine otherEng = base.equals("graphhopper") ? manual : gh;
@@ -0,0 +1,62 @@
+package com.example.hanoimap;
+import java.util.Arrays;
+final class BucketIndex {
+    private int[] node = new int[1024];
+    private int[] target = new int[1024];
+    private double[] dist = new double[1024];
+    private int[] prev = new int[1024];
+    private int size;
+    private int[] offset;
+    private int[] sortedTarget;
+    private double[] sortedDist;
+    private int[] sortedPrev;
+    void add(int v, int t, double d, int p) {
+        if (size == node.length) {
+            node = Arrays.copyOf(node, size * 2);
+            target = Arrays.copyOf(target, size * 2);
+            dist = Arrays.copyOf(dist, size * 2);
+            prev = Arrays.copyOf(prev, size * 2);
+        }
+        node[size] = v;
+        target[size] = t;
+        dist[size] = d;
+        prev[size] = p;
+        size++;
+    }
+    void seal(int nodeCount) {
+        offset = new int[nodeCount + 1];
+        for (int i = 0; i < size; i++) {
+            offset[node[i] + 1]++;
+        }
+        for (int v = 0; v < nodeCount; v++) {
+            offset[v + 1] += offset[v];
+        }
+        int[] fill = Arrays.copyOf(offset, nodeCount);
+        sortedTarget = new int[size];
+        sortedDist = new double[size];
+        sortedPrev = new int[size];
+        for (int i = 0; i < size; i++) {
+            int slot = fill[node[i]]++;
+            sortedTarget[slot] = target[i];
+            sortedDist[slot] = dist[i];
+            sortedPrev[slot] = prev[i];
+        }
+    }
+    void relax(int v, double d, double[] row, int[] meet) {
+        for (int i = offset[v], end = offset[v + 1]; i < end; i++) {
+            double cand = d + sortedDist[i];
+            if (cand < row[sortedTarget[i]]) {
+                row[sortedTarget[i]] = cand;
+                meet[sortedTarget[i]] = v;
+            }
+        }
+    }
+    int prev(int v, int t) {
+        for (int i = offset[v], end = offset[v + 1]; i < end; i++) {
+            if (sortedTarget[i] == t) {
+                return sortedPrev[i];
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.hanoimap;
+import java.util.Arrays;
+final class ChainCompression {
+    final int[] nodeLatE7;
+    final int[] nodeLonE7;
+    final int edgeCount;
+    final int[] edgeFrom;
+    final int[] edgeTo;
+    final float[] edgeWeight;
+    final byte[] edgeRoadClass;
+    final int[] geometryOffset;
+    final int[] geometryLatE7;
+    final int[] geometryLonE7;
+    private ChainCompression(int[] nodeLatE7, int[] nodeLonE7, int edgeCount, int[] edgeFrom, int[] edgeTo, float[] edgeWeight,
+                             byte[] edgeRoadClass, int[] geometryOffset, int[] geometryLatE7, int[] geometryLonE7) {
+        this.nodeLatE7 = nodeLatE7;
+        this.nodeLonE7 = nodeLonE7;
+        this.edgeCount = edgeCount;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeWeight = edgeWeight;
+        this.edgeRoadClass = edgeRoadClass;
+        this.geometryOffset = geometryOffset;
+        this.geometryLatE7 = geometryLatE7;
+        this.geometryLonE7 = geometryLonE7;
+    }
+    static ChainCompression compress(int[] latE7, int[] lonE7, int[] from, int[] to, float[] weight, byte[] roadClass, int edgeCount) {
+        return new Builder(latE7, lonE7, from, to, weight, roadClass, edgeCount).build();
+    }
+    private static final class Builder {
+        private final int nodeCount;
+        private final int[] latE7;
+        private final int[] lonE7;
+        private final int[] from;
+        private final int[] to;
+        private final float[] weight;
+        private final byte[] roadClass;
+        private final int edgeCount;
+        private final int[] outOffset;
+        private final int[] outEdges;
+        private final boolean[] junction;
+        private final boolean[] used;
+        private int[] pending = new int[16];
+        private int[] chainEdges = new int[64];
+        private int[] outFrom = new int[1024];
+        private int[] outTo = new int[1024];
+        private float[] outWeight = new float[1024];
+        private byte[] outRoadClass = new byte[1024];
+        private int[] outGeometryOffset = new int[1025];
+        private int[] geometryNodes = new int[4096];
+        private int outCount;
+        private int geometryCount;
+        private Builder(int[] latE7, int[] lonE7, int[] from, int[] to, float[] weight, byte[] roadClass, int edgeCount) {
+            this.nodeCount = latE7.length;
+            this.latE7 = latE7;
+            this.lonE7 = lonE7;
+            this.from = from;
+            this.to = to;
+            this.weight = weight;
+            this.roadClass = roadClass;
+            this.edgeCount = edgeCount;
+            this.outOffset = new int[nodeCount + 1];
+            this.outEdges = new int[edgeCount];
+            this.junction = new boolean[nodeCount];
+            this.used = new boolean[edgeCount];
+        }
+        private ChainCompression build() {
+            int[] inOffset = new int[nodeCount + 1];
+            int[] inEdges = new int[edgeCount];
+            for (int e = 0; e < edgeCount; e++) {
+                if (from[e] == to[e]) {
+                    used[e] = true;
+                    continue;
+                }
+                outOffset[from[e] + 1]++;
+                inOffset[to[e] + 1]++;
+            }
+            for (int v = 0; v < nodeCount; v++) {
+                outOffset[v + 1] += outOffset[v];
+                inOffset[v + 1] += inOffset[v];
+            }
+            int[] outFill = Arrays.copyOf(outOffset, nodeCount);
+            int[] inFill = Arrays.copyOf(inOffset, nodeCount);
+            for (int e = 0; e < edgeCount; e++) {
+                if (from[e] != to[e]) {
+                    outEdges[outFill[from[e]]++] = e;
+                    inEdges[inFill[to[e]]++] = e;
+                }
+            }
+            for (int v = 0; v < nodeCount; v++) {
+                junction[v] = !isThrough(v, inOffset, inEdges);
+            }
+            for (int u = 0; u < nodeCount; u++) {
+                if (junction[u]) {
+                    walkFrom(u);
+                }
+            }
+            for (int e = 0; e < edgeCount; e++) {
+                if (!used[e]) {
+                    junction[from[e]] = true;
+                    walkFrom(from[e]);
+                }
+            }
+            return finish();
+        }
+        private void walkFrom(int node) {
+            pending[0] = node;
+            int pendingCount = 1;
+            while (pendingCount > 0) {
+                int u = pending[--pendingCount];
+                for (int i = outOffset[u]; i < outOffset[u + 1]; i++) {
+                    if (used[outEdges[i]]) {
+                        continue;
+                    }
+                    int promoted = walk(outEdges[i]);
+                    if (promoted >= 0) {
+                        if (pendingCount + 2 > pending.length) {
+                            pending = Arrays.copyOf(pending, pending.length * 2);
+                        }
+                        pending[pendingCount++] = promoted;
+                        pending[pendingCount++] = u;
+                        break;
+                    }
+                }
+            }
+        }
+        private boolean isThrough(int v, int[] inOffset, int[] inEdges) {
+            int outDeg = outOffset[v + 1] - outOffset[v];
+            int inDeg = inOffset[v + 1] - inOffset[v];
+            if (outDeg == 0) {
+                return false;
+            }
+            byte c = roadClass[outEdges[outOffset[v]]];
+            if (!sameRoadClass(outOffset[v], outOffset[v + 1], outEdges, c) || !sameRoadClass(inOffset[v], inOffset[v + 1], inEdges, c)) {
+                return false;
+            }
+            if (outDeg == 1 && inDeg == 1) {
+                return from[inEdges[inOffset[v]]] != to[outEdges[outOffset[v]]];
+            }
+            if (outDeg == 2 && inDeg == 2) {
+                int b1 = to[outEdges[outOffset[v]]];
+                int b2 = to[outEdges[outOffset[v] + 1]];
+                int a1 = from[inEdges[inOffset[v]]];
+                int a2 = from[inEdges[inOffset[v] + 1]];
+                return b1 != b2 && ((a1 == b1 && a2 == b2) || (a1 == b2 && a2 == b1));
+            }
+            return false;
+        }
+        private boolean sameRoadClass(int begin, int end, int[] edges, byte expected) {
+            for (int i = begin; i < end; i++) {
+                if (roadClass[edges[i]] != expected) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        private int walk(int first) {
+            int start = from[first];
+            int geometryStart = geometryCount;
+            int chainLength = 0;
+            double total = 0.0;
+            int prev = start;
+            int e = first;
+            while (true) {
+                if (chainLength == chainEdges.length) {
+                    chainEdges = Arrays.copyOf(chainEdges, chainLength * 2);
+                }
+                chainEdges[chainLength++] = e;
+                used[e] = true;
+                total += weight[e];
+                int cur = to[e];
+                if (junction[cur]) {
+                    if (cur == start) {
+                        return undoLoop(chainLength, geometryStart);
+                    }
+                    emit(start, cur, total, roadClass[first], geometryStart);
+                    return -1;
+                }
+                addGeometry(cur);
+                int next = outEdges[outOffset[cur]];
+                if (to[next] == prev && outOffset[cur + 1] - outOffset[cur] == 2) {
+                    next = outEdges[outOffset[cur] + 1];
+                }
+                prev = cur;
+                e = next;
+            }
+        }
+        private int undoLoop(int chainLength, int geometryStart) {
+            for (int i = 0; i < chainLength; i++) {
+                used[chainEdges[i]] = false;
+            }
+            int mid = geometryNodes[(geometryStart + geometryCount) >>> 1];
+            junction[mid] = true;
+            geometryCount = geometryStart;
+            return mid;
+        }
+        private void addGeometry(int node) {
+            if (geometryCount == geometryNodes.length) {
+                geometryNodes = Arrays.copyOf(geometryNodes, geometryCount * 2);
+            }
+            geometryNodes[geometryCount++] = node;
+        }
+        private void emit(int u, int v, double total, byte edgeClass, int geometryStart) {
+            if (outCount == outFrom.length) {
+                int cap = outCount * 2;
+                outFrom = Arrays.copyOf(outFrom, cap);
+                outTo = Arrays.copyOf(outTo, cap);
+                outWeight = Arrays.copyOf(outWeight, cap);
+                outRoadClass = Arrays.copyOf(outRoadClass, cap);
+                outGeometryOffset = Arrays.copyOf(outGeometryOffset, cap + 1);
+            }
+            float w = (float) total;
+            outFrom[outCount] = u;
+            outTo[outCount] = v;
+            outWeight[outCount] = w < total ? Math.nextUp(w) : w;
+            outRoadClass[outCount] = edgeClass;
+            outGeometryOffset[outCount] = geometryStart;
+            outCount++;
+        }
+        private ChainCompression finish() {
+            outGeometryOffset[outCount] = geometryCount;
+            int[] newIndex = new int[nodeCount];
+            int junctions = 0;
+            for (int v = 0; v < nodeCount; v++) {
+                newIndex[v] = junction[v] ? junctions++ : -1;
+            }
+            int[] lat = new int[junctions];
+            int[] lon = new int[junctions];
+            for (int v = 0; v < nodeCount; v++) {
+                if (junction[v]) {
+                    lat[newIndex[v]] = latE7[v];
+                    lon[newIndex[v]] = lonE7[v];
+                }
+            }
+            int[] edgeFrom = new int[outCount];
+            int[] edgeTo = new int[outCount];
+            for (int e = 0; e < outCount; e++) {
+                edgeFrom[e] = newIndex[outFrom[e]];
+                edgeTo[e] = newIndex[outTo[e]];
+            }
+            int[] geometryLat = new int[geometryCount];
+            int[] geometryLon = new int[geometryCount];
+            for (int i = 0; i < geometryCount; i++) {
+                geometryLat[i] = latE7[geometryNodes[i]];
+                geometryLon[i] = lonE7[geometryNodes[i]];
+            }
+            return new ChainCompression(lat, lon, outCount, edgeFrom, edgeTo, Arrays.copyOf(outWeight, outCount), Arrays.copyOf(outRoadClass, outCount),
+                    Arrays.copyOf(outGeometryOffset, outCount + 1), geometryLat, geometryLon);
+        }
+    }
+}
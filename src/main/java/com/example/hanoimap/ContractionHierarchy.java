@@ -0,0 +1,659 @@
+package com.example.hanoimap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+final class ContractionHierarchy {
+    private static final int FILE_VERSION = 1;
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    private static final int PRIORITY_SETTLE_LIMIT = 50;
+    private final int nodeCount;
+    private final long graphFingerprint;
+    private final int[] rank;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final double[] edgeWeight;
+    private final int[] edgeChild1;
+    private final int[] edgeChild2;
+    private final int[] edgeHops;
+    private final int[] upOffset;
+    private final int[] upEdges;
+    private final int[] downOffset;
+    private final int[] downEdges;
+    private ContractionHierarchy(int nodeCount, long graphFingerprint, int[] rank, int[] edgeFrom, int[] edgeTo, double[] edgeWeight,
+                                 int[] edgeChild1, int[] edgeChild2, int[] edgeHops, int[] upOffset, int[] upEdges, int[] downOffset, int[] downEdges) {
+        this.nodeCount = nodeCount;
+        this.graphFingerprint = graphFingerprint;
+        this.rank = rank;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeWeight = edgeWeight;
+        this.edgeChild1 = edgeChild1;
+        this.edgeChild2 = edgeChild2;
+        this.edgeHops = edgeHops;
+        this.upOffset = upOffset;
+        this.upEdges = upEdges;
+        this.downOffset = downOffset;
+        this.downEdges = downEdges;
+    }
+    int nodeCount() {
+        return nodeCount;
+    }
+    int edgeCount() {
+        return edgeFrom.length;
+    }
+    int search(SearchContext fwd, VirtualNode source, VirtualNode target) {
+        SearchContext bwd = fwd.reverse();
+        fwd.nextRun();
+        bwd.nextRun();
+        IndexedMinHeap fwdHeap = fwd.heap;
+        IndexedMinHeap bwdHeap = bwd.heap;
+        for (int i = 0; i < source.size(); i++) {
+            fwd.seed(source.nodes()[i], source.cost()[i], source.cost()[i]);
+        }
+        for (int i = 0; i < target.size(); i++) {
+            bwd.seed(target.nodes()[i], target.cost()[i], target.cost()[i]);
+        }
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        boolean forwardTurn = true;
+        while (true) {
+            boolean fwdOpen = !fwdHeap.isEmpty() && fwdHeap.peekKey() < best;
+            boolean bwdOpen = !bwdHeap.isEmpty() && bwdHeap.peekKey() < best;
+            if (!fwdOpen && !bwdOpen) {
+                break;
+            }
+            boolean forward = fwdOpen && (forwardTurn || !bwdOpen);
+            forwardTurn = !forwardTurn;
+            SearchContext self = forward ? fwd : bwd;
+            SearchContext other = forward ? bwd : fwd;
+            int u = self.heap.pollMin();
+            self.close(u);
+            double distU = self.dist[u];
+            double total = distU + other.getDist(u);
+            if (total < best) {
+                best = total;
+                meet = u;
+            }
+            if (!isStalled(self, u, distU, forward)) {
+                relaxUpward(self, u, distU, forward);
+            }
+        }
+        fwdHeap.clear();
+        bwdHeap.clear();
+        return meet;
+    }
+    double[][] manyToMany(SearchContext ctx, VirtualNode[] sources, VirtualNode[] targets, int[][][] paths) {
+        double[][] dist = new double[sources.length][targets.length];
+        for (double[] row : dist) {
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+        }
+        BucketIndex buckets = new BucketIndex();
+        for (int j = 0; j < targets.length; j++) {
+            if (targets[j] != null) {
+                int target = j;
+                upwardSearch(ctx, targets[j], false, (node, d) -> buckets.add(node, target, d, ctx.getPrev(node)));
+            }
+        }
+        buckets.seal(nodeCount);
+        int[] meet = new int[targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i] != null) {
+                double[] row = dist[i];
+                Arrays.fill(meet, -1);
+                upwardSearch(ctx, sources[i], true, (node, d) -> buckets.relax(node, d, row, meet));
+                for (int j = 0; paths != null && j < targets.length; j++) {
+                    int target = j;
+                    if (meet[j] >= 0) {
+                        paths[i][j] = unpackPath(ctx, meet[j], node -> buckets.prev(node, target));
+                    }
+                }
+            }
+        }
+        return dist;
+    }
+    private void upwardSearch(SearchContext ctx, VirtualNode source, boolean forward, SettledVisitor visitor) {
+        ctx.nextRun();
+        IndexedMinHeap heap = ctx.heap;
+        for (int i = 0; i < source.size(); i++) {
+            ctx.seed(source.nodes()[i], source.cost()[i], source.cost()[i]);
+        }
+        while (!heap.isEmpty()) {
+            int u = heap.pollMin();
+            ctx.close(u);
+            double distU = ctx.dist[u];
+            if (!isStalled(ctx, u, distU, forward)) {
+                visitor.settled(u, distU);
+                relaxUpward(ctx, u, distU, forward);
+            }
+        }
+    }
+    private void relaxUpward(SearchContext self, int u, double distU, boolean forward) {
+        int[] offsets = forward ? upOffset : downOffset;
+        int[] edges = forward ? upEdges : downEdges;
+        self.relaxed += offsets[u + 1] - offsets[u];
+        for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+            int e = edges[i];
+            int v = forward ? edgeTo[e] : edgeFrom[e];
+            if (self.isClosed(v)) {
+                continue;
+            }
+            double cand = distU + edgeWeight[e];
+            if (cand < self.getDist(v)) {
+                self.setDist(v, cand);
+                self.setPrev(v, e);
+                self.heap.pushOrDecrease(v, cand);
+            }
+        }
+    }
+    double distance(SearchContext fwd, int meet) {
+        return fwd.getDist(meet) + fwd.reverse().getDist(meet);
+    }
+    int[] unpackPath(SearchContext fwd, int meet) {
+        return unpackPath(fwd, meet, fwd.reverse()::getPrev);
+    }
+    private int[] unpackPath(SearchContext fwd, int meet, IntUnaryOperator backwardPrev) {
+        int start = meet;
+        int forwardHops = 0;
+        for (int e = fwd.getPrev(meet); e != -1; e = fwd.getPrev(edgeFrom[e])) {
+            forwardHops += edgeHops[e];
+            start = edgeFrom[e];
+        }
+        int backwardHops = 0;
+        for (int e = backwardPrev.applyAsInt(meet); e != -1; e = backwardPrev.applyAsInt(edgeTo[e])) {
+            backwardHops += edgeHops[e];
+        }
+        int[] path = new int[forwardHops + backwardHops + 1];
+        path[0] = start;
+        int end = forwardHops;
+        for (int e = fwd.getPrev(meet); e != -1; e = fwd.getPrev(edgeFrom[e])) {
+            end -= edgeHops[e];
+            unpackEdge(e, path, end + 1);
+        }
+        int pos = forwardHops + 1;
+        for (int e = backwardPrev.applyAsInt(meet); e != -1; e = backwardPrev.applyAsInt(edgeTo[e])) {
+            pos = unpackEdge(e, path, pos);
+        }
+        return path;
+    }
+    private int unpackEdge(int e, int[] path, int pos) {
+        if (edgeChild1[e] < 0) {
+            path[pos] = edgeTo[e];
+            return pos + 1;
+        }
+        pos = unpackEdge(edgeChild1[e], path, pos);
+        return unpackEdge(edgeChild2[e], path, pos);
+    }
+    private boolean isStalled(SearchContext self, int u, double distU, boolean forward) {
+        int[] offsets = forward ? downOffset : upOffset;
+        int[] edges = forward ? downEdges : upEdges;
+        for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+            int e = edges[i];
+            int x = forward ? edgeFrom[e] : edgeTo[e];
+            if (self.getDist(x) + edgeWeight[e] < distU) {
+                return true;
+            }
+        }
+        return false;
+    }
+    static ContractionHierarchy build(int nodeCount, int[] edgeFrom, int[] edgeTo, float[] edgeWeight, long graphFingerprint) {
+        try (WorkerPool pool = new WorkerPool("ch-preprocessing")) {
+            return new Builder(nodeCount, edgeFrom, edgeTo, edgeWeight, pool).build(graphFingerprint);
+        }
+    }
+    void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_VERSION);
+            out.writeLong(graphFingerprint);
+            out.writeInt(nodeCount);
+            out.writeInt(edgeFrom.length);
+            for (int i = 0; i < nodeCount; i++) {
+                out.writeInt(rank[i]);
+            }
+            for (int e = 0; e < edgeFrom.length; e++) {
+                out.writeInt(edgeFrom[e]);
+                out.writeInt(edgeTo[e]);
+                out.writeDouble(edgeWeight[e]);
+                out.writeInt(edgeChild1[e]);
+                out.writeInt(edgeChild2[e]);
+                out.writeInt(edgeHops[e]);
+            }
+            writeIntArray(out, upOffset);
+            writeIntArray(out, upEdges);
+            writeIntArray(out, downOffset);
+            writeIntArray(out, downEdges);
+        }
+    }
+    static ContractionHierarchy load(File file, int expectedNodeCount, long expectedFingerprint) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Hierarchy version mismatch");
+            }
+            long fingerprint = in.readLong();
+            int nodeCount = in.readInt();
+            if (fingerprint != expectedFingerprint || nodeCount != expectedNodeCount) {
+                throw new IOException("Hierarchy does not match graph");
+            }
+            int edgeCount = in.readInt();
+            int[] rank = new int[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                rank[i] = in.readInt();
+            }
+            int[] from = new int[edgeCount];
+            int[] to = new int[edgeCount];
+            double[] weight = new double[edgeCount];
+            int[] child1 = new int[edgeCount];
+            int[] child2 = new int[edgeCount];
+            int[] hops = new int[edgeCount];
+            for (int e = 0; e < edgeCount; e++) {
+                from[e] = in.readInt();
+                to[e] = in.readInt();
+                weight[e] = in.readDouble();
+                child1[e] = in.readInt();
+                child2[e] = in.readInt();
+                hops[e] = in.readInt();
+            }
+            int[] upOffset = readIntArray(in);
+            int[] upEdges = readIntArray(in);
+            int[] downOffset = readIntArray(in);
+            int[] downEdges = readIntArray(in);
+            try {
+                if (in.read() != -1) {
+                    throw new IOException("Trailing bytes in hierarchy");
+                }
+            } catch (EOFException ignored) {
+            }
+            return new ContractionHierarchy(nodeCount, fingerprint, rank, from, to, weight, child1, child2, hops,
+                    upOffset, upEdges, downOffset, downEdges);
+        }
+    }
+    private static void writeIntArray(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+    private static int[] readIntArray(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+    private static final class Builder {
+        private static final byte ACTIVE = 0;
+        private static final byte CONTRACTED = 1;
+        private static final byte IN_ROUND = 2;
+        private final int nodeCount;
+        private final WorkerPool pool;
+        private final SearchContext[] witnessContexts;
+        private final byte[] state;
+        private final int[] priority;
+        private final int[] deletedNeighbors;
+        private final int[] level;
+        private final int[] rank;
+        private final int[][] outEdges;
+        private final int[] outCount;
+        private final int[][] inEdges;
+        private final int[] inCount;
+        private int[] from = new int[1024];
+        private int[] to = new int[1024];
+        private double[] weight = new double[1024];
+        private int[] child1 = new int[1024];
+        private int[] child2 = new int[1024];
+        private int[] hops = new int[1024];
+        private int edgeCount;
+        private final int[] upStart;
+        private final int[] upLength;
+        private final int[] downStart;
+        private final int[] downLength;
+        private int[] upBuffer = new int[1024];
+        private int upSize;
+        private int[] downBuffer = new int[1024];
+        private int downSize;
+        private Builder(int nodeCount, int[] edgeFrom, int[] edgeTo, float[] edgeWeight, WorkerPool pool) {
+            this.nodeCount = nodeCount;
+            this.pool = pool;
+            this.witnessContexts = new SearchContext[pool.workers()];
+            this.state = new byte[nodeCount];
+            this.priority = new int[nodeCount];
+            this.deletedNeighbors = new int[nodeCount];
+            this.level = new int[nodeCount];
+            this.rank = new int[nodeCount];
+            this.outEdges = new int[nodeCount][];
+            this.outCount = new int[nodeCount];
+            this.inEdges = new int[nodeCount][];
+            this.inCount = new int[nodeCount];
+            this.upStart = new int[nodeCount];
+            this.upLength = new int[nodeCount];
+            this.downStart = new int[nodeCount];
+            this.downLength = new int[nodeCount];
+            for (int e = 0; e < edgeTo.length; e++) {
+                if (edgeFrom[e] != edgeTo[e]) {
+                    addOrImprove(edgeFrom[e], edgeTo[e], edgeWeight[e], -1, -1, 1);
+                }
+            }
+        }
+        private ContractionHierarchy build(long graphFingerprint) {
+            int[] remaining = new int[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                remaining[i] = i;
+            }
+            int remainingCount = nodeCount;
+            updatePriorities(remaining, remainingCount);
+            boolean[] selected = new boolean[nodeCount];
+            int[] touched = new int[nodeCount];
+            int[] touchedStamp = new int[nodeCount];
+            int round = 0;
+            int nextRank = 0;
+            while (remainingCount > 0) {
+                round++;
+                int[] candidates = remaining;
+                int candidateCount = remainingCount;
+                pool.forEach(candidateCount, 64, (worker, i) -> {
+                    int v = candidates[i];
+                    selected[v] = isLocalMinimum(v);
+                });
+                int roundSize = 0;
+                int kept = 0;
+                int[] roundNodes = new int[candidateCount];
+                for (int i = 0; i < candidateCount; i++) {
+                    int v = candidates[i];
+                    if (selected[v]) {
+                        roundNodes[roundSize++] = v;
+                        state[v] = IN_ROUND;
+                    } else {
+                        remaining[kept++] = v;
+                    }
+                }
+                remainingCount = kept;
+                ShortcutBuffer[] buffers = new ShortcutBuffer[pool.workers()];
+                for (int t = 0; t < buffers.length; t++) {
+                    buffers[t] = new ShortcutBuffer();
+                }
+                int[] nodes = roundNodes;
+                pool.forEach(roundSize, 16, (worker, i) -> findShortcuts(nodes[i], witnessContext(worker), buffers[worker], -1, WITNESS_SETTLE_LIMIT));
+                int touchedCount = 0;
+                for (int i = 0; i < roundSize; i++) {
+                    int v = roundNodes[i];
+                    rank[v] = nextRank++;
+                    state[v] = CONTRACTED;
+                    upStart[v] = upSize;
+                    for (int k = 0; k < outCount[v]; k++) {
+                        int e = outEdges[v][k];
+                        int y = to[e];
+                        if (state[y] == CONTRACTED) {
+                            continue;
+                        }
+                        appendUp(e);
+                        touchedCount = touch(y, v, touched, touchedStamp, touchedCount, round);
+                    }
+                    upLength[v] = upSize - upStart[v];
+                    downStart[v] = downSize;
+                    for (int k = 0; k < inCount[v]; k++) {
+                        int e = inEdges[v][k];
+                        int x = from[e];
+                        if (state[x] == CONTRACTED) {
+                            continue;
+                        }
+                        appendDown(e);
+                        touchedCount = touch(x, v, touched, touchedStamp, touchedCount, round);
+                    }
+                    downLength[v] = downSize - downStart[v];
+                }
+                for (ShortcutBuffer buffer : buffers) {
+                    for (int k = 0; k < buffer.size; k++) {
+                        int e1 = buffer.inEdge[k];
+                        int e2 = buffer.outEdge[k];
+                        addOrImprove(from[e1], to[e2], weight[e1] + weight[e2], e1, e2, hops[e1] + hops[e2]);
+                    }
+                }
+                for (int i = 0; i < touchedCount; i++) {
+                    compact(touched[i]);
+                }
+                updatePriorities(touched, touchedCount);
+            }
+            return finish(graphFingerprint);
+        }
+        private int touch(int node, int contracted, int[] touched, int[] touchedStamp, int touchedCount, int round) {
+            deletedNeighbors[node]++;
+            level[node] = Math.max(level[node], level[contracted] + 1);
+            if (touchedStamp[node] != round) {
+                touchedStamp[node] = round;
+                touched[touchedCount++] = node;
+            }
+            return touchedCount;
+        }
+        private boolean isLocalMinimum(int v) {
+            for (int k = 0; k < outCount[v]; k++) {
+                int y = to[outEdges[v][k]];
+                if (state[y] != CONTRACTED && precedes(y, v)) {
+                    return false;
+                }
+            }
+            for (int k = 0; k < inCount[v]; k++) {
+                int x = from[inEdges[v][k]];
+                if (state[x] != CONTRACTED && precedes(x, v)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        private boolean precedes(int a, int b) {
+            if (priority[a] != priority[b]) {
+                return priority[a] < priority[b];
+            }
+            int ha = mix(a);
+            int hb = mix(b);
+            return ha != hb ? ha < hb : a < b;
+        }
+        private void updatePriorities(int[] nodes, int count) {
+            pool.forEach(count, 16, (worker, i) -> {
+                int v = nodes[i];
+                int shortcuts = findShortcuts(v, witnessContext(worker), null, v, PRIORITY_SETTLE_LIMIT);
+                int degree = 0;
+                for (int k = 0; k < outCount[v]; k++) {
+                    if (state[to[outEdges[v][k]]] != CONTRACTED) {
+                        degree++;
+                    }
+                }
+                for (int k = 0; k < inCount[v]; k++) {
+                    if (state[from[inEdges[v][k]]] != CONTRACTED) {
+                        degree++;
+                    }
+                }
+                priority[v] = 2 * (shortcuts - degree) + deletedNeighbors[v] + level[v];
+            });
+        }
+        private int findShortcuts(int v, SearchContext ctx, ShortcutBuffer buffer, int avoid, int settleLimit) {
+            int shortcuts = 0;
+            double maxOut = 0.0;
+            for (int k = 0; k < outCount[v]; k++) {
+                int e = outEdges[v][k];
+                if (state[to[e]] == ACTIVE) {
+                    maxOut = Math.max(maxOut, weight[e]);
+                }
+            }
+            for (int a = 0; a < inCount[v]; a++) {
+                int inEdge = inEdges[v][a];
+                int x = from[inEdge];
+                if (state[x] != ACTIVE) {
+                    continue;
+                }
+                witnessSearch(ctx, x, weight[inEdge] + maxOut, avoid, settleLimit);
+                for (int b = 0; b < outCount[v]; b++) {
+                    int outEdge = outEdges[v][b];
+                    int y = to[outEdge];
+                    if (y == x || state[y] != ACTIVE) {
+                        continue;
+                    }
+                    double via = weight[inEdge] + weight[outEdge];
+                    if (ctx.getDist(y) <= via) {
+                        continue;
+                    }
+                    shortcuts++;
+                    if (buffer != null) {
+                        buffer.add(inEdge, outEdge);
+                    }
+                }
+            }
+            return shortcuts;
+        }
+        private void witnessSearch(SearchContext ctx, int source, double maxDist, int avoid, int settleLimit) {
+            ctx.nextRun();
+            IndexedMinHeap heap = ctx.heap;
+            ctx.setDist(source, 0.0);
+            heap.pushOrDecrease(source, 0.0);
+            int settled = 0;
+            while (!heap.isEmpty()) {
+                int u = heap.pollMin();
+                ctx.close(u);
+                double distU = ctx.dist[u];
+                if (distU > maxDist || ++settled > settleLimit) {
+                    break;
+                }
+                for (int k = 0; k < outCount[u]; k++) {
+                    int e = outEdges[u][k];
+                    int w = to[e];
+                    if (w == avoid || state[w] != ACTIVE || ctx.isClosed(w)) {
+                        continue;
+                    }
+                    double cand = distU + weight[e];
+                    if (cand < ctx.getDist(w)) {
+                        ctx.setDist(w, cand);
+                        heap.pushOrDecrease(w, cand);
+                    }
+                }
+            }
+            heap.clear();
+        }
+        private SearchContext witnessContext(int worker) {
+            SearchContext ctx = witnessContexts[worker];
+            if (ctx == null) {
+                ctx = new SearchContext(nodeCount);
+                witnessContexts[worker] = ctx;
+            }
+            return ctx;
+        }
+        private void addOrImprove(int u, int v, double w, int c1, int c2, int h) {
+            for (int k = 0; k < outCount[u]; k++) {
+                int e = outEdges[u][k];
+                if (to[e] == v) {
+                    if (w < weight[e]) {
+                        weight[e] = w;
+                        child1[e] = c1;
+                        child2[e] = c2;
+                        hops[e] = h;
+                    }
+                    return;
+                }
+            }
+            if (edgeCount == from.length) {
+                int cap = edgeCount << 1;
+                from = Arrays.copyOf(from, cap);
+                to = Arrays.copyOf(to, cap);
+                weight = Arrays.copyOf(weight, cap);
+                child1 = Arrays.copyOf(child1, cap);
+                child2 = Arrays.copyOf(child2, cap);
+                hops = Arrays.copyOf(hops, cap);
+            }
+            int e = edgeCount++;
+            from[e] = u;
+            to[e] = v;
+            weight[e] = w;
+            child1[e] = c1;
+            child2[e] = c2;
+            hops[e] = h;
+            outEdges[u] = append(outEdges[u], outCount[u]++, e);
+            inEdges[v] = append(inEdges[v], inCount[v]++, e);
+        }
+        private void compact(int node) {
+            int n = 0;
+            for (int k = 0; k < outCount[node]; k++) {
+                int e = outEdges[node][k];
+                if (state[to[e]] != CONTRACTED) {
+                    outEdges[node][n++] = e;
+                }
+            }
+            outCount[node] = n;
+            n = 0;
+            for (int k = 0; k < inCount[node]; k++) {
+                int e = inEdges[node][k];
+                if (state[from[e]] != CONTRACTED) {
+                    inEdges[node][n++] = e;
+                }
+            }
+            inCount[node] = n;
+        }
+        private static int[] append(int[] list, int size, int value) {
+            if (list == null) {
+                list = new int[4];
+            } else if (size == list.length) {
+                list = Arrays.copyOf(list, size << 1);
+            }
+            list[size] = value;
+            return list;
+        }
+        private void appendUp(int e) {
+            if (upSize == upBuffer.length) {
+                upBuffer = Arrays.copyOf(upBuffer, upSize << 1);
+            }
+            upBuffer[upSize++] = e;
+        }
+        private void appendDown(int e) {
+            if (downSize == downBuffer.length) {
+                downBuffer = Arrays.copyOf(downBuffer, downSize << 1);
+            }
+            downBuffer[downSize++] = e;
+        }
+        private ContractionHierarchy finish(long graphFingerprint) {
+            int[] upOffset = new int[nodeCount + 1];
+            int[] downOffset = new int[nodeCount + 1];
+            for (int v = 0; v < nodeCount; v++) {
+                upOffset[v + 1] = upOffset[v] + upLength[v];
+                downOffset[v + 1] = downOffset[v] + downLength[v];
+            }
+            int[] upEdges = new int[upSize];
+            int[] downEdges = new int[downSize];
+            for (int v = 0; v < nodeCount; v++) {
+                System.arraycopy(upBuffer, upStart[v], upEdges, upOffset[v], upLength[v]);
+                System.arraycopy(downBuffer, downStart[v], downEdges, downOffset[v], downLength[v]);
+            }
+            return new ContractionHierarchy(nodeCount, graphFingerprint, rank,
+                    Arrays.copyOf(from, edgeCount), Arrays.copyOf(to, edgeCount), Arrays.copyOf(weight, edgeCount),
+                    Arrays.copyOf(child1, edgeCount), Arrays.copyOf(child2, edgeCount), Arrays.copyOf(hops, edgeCount),
+                    upOffset, upEdges, downOffset, downEdges);
+        }
+        private static int mix(int x) {
+            int z = x * 0x9E3779B9;
+            return z ^ (z >>> 16);
+        }
+        private static final class ShortcutBuffer {
+            private int[] inEdge = new int[64];
+            private int[] outEdge = new int[64];
+            private int size;
+            void add(int e1, int e2) {
+                if (size == inEdge.length) {
+                    inEdge = Arrays.copyOf(inEdge, size << 1);
+                    outEdge = Arrays.copyOf(outEdge, size << 1);
+                }
+                inEdge[size] = e1;
+                outEdge[size] = e2;
+                size++;
+            }
+        }
+    }
+    @FunctionalInterface
+    private interface SettledVisitor {
+        void settled(int node, double dist);
+    }
+}
@@ -0,0 +1,469 @@
+package com.example.hanoimap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+final class CustomizableHierarchy {
+    private static final int FILE_VERSION = 1;
+    private static final int CUSTOMIZATION_CHUNK = 64;
+    private final int nodeCount;
+    private final long graphFingerprint;
+    private final int[] rank;
+    private final int[] nodeOfRank;
+    private final int[] upOffset;
+    private final int[] upHead;
+    private final int[] arcTail;
+    private final int[] downOffset;
+    private final int[] downArc;
+    private final int[] levelOffset;
+    private final int[] levelNodes;
+    private final int[] edgeArc;
+    private CustomizableHierarchy(int nodeCount, long graphFingerprint, int[] rank, int[] upOffset, int[] upHead, int[] edgeArc) {
+        this.nodeCount = nodeCount;
+        this.graphFingerprint = graphFingerprint;
+        this.rank = rank;
+        this.upOffset = upOffset;
+        this.upHead = upHead;
+        this.edgeArc = edgeArc;
+        this.nodeOfRank = new int[nodeCount];
+        for (int v = 0; v < nodeCount; v++) {
+            nodeOfRank[rank[v]] = v;
+        }
+        int arcCount = upHead.length;
+        this.arcTail = new int[arcCount];
+        this.downOffset = new int[nodeCount + 1];
+        for (int r = 0; r < nodeCount; r++) {
+            for (int a = upOffset[r]; a < upOffset[r + 1]; a++) {
+                arcTail[a] = r;
+                downOffset[upHead[a] + 1]++;
+            }
+        }
+        for (int r = 0; r < nodeCount; r++) {
+            downOffset[r + 1] += downOffset[r];
+        }
+        this.downArc = new int[arcCount];
+        int[] fill = Arrays.copyOf(downOffset, nodeCount);
+        int[] level = new int[nodeCount];
+        int levels = nodeCount == 0 ? 0 : 1;
+        for (int r = 0; r < nodeCount; r++) {
+            for (int a = upOffset[r]; a < upOffset[r + 1]; a++) {
+                int head = upHead[a];
+                downArc[fill[head]++] = a;
+                level[head] = Math.max(level[head], level[r] + 1);
+                levels = Math.max(levels, level[head] + 1);
+            }
+        }
+        this.levelOffset = new int[levels + 1];
+        for (int r = 0; r < nodeCount; r++) {
+            levelOffset[level[r] + 1]++;
+        }
+        for (int l = 0; l < levels; l++) {
+            levelOffset[l + 1] += levelOffset[l];
+        }
+        this.levelNodes = new int[nodeCount];
+        int[] levelFill = Arrays.copyOf(levelOffset, levels);
+        for (int r = 0; r < nodeCount; r++) {
+            levelNodes[levelFill[level[r]]++] = r;
+        }
+    }
+    int nodeCount() {
+        return nodeCount;
+    }
+    int arcCount() {
+        return upHead.length;
+    }
+    int nodeOfRank(int r) {
+        return nodeOfRank[r];
+    }
+    int levelCount() {
+        return levelOffset.length - 1;
+    }
+    Weights customize(float[] edgeWeight) {
+        int arcCount = upHead.length;
+        double[] up = new double[arcCount];
+        double[] down = new double[arcCount];
+        int[] upMiddle = new int[arcCount];
+        int[] downMiddle = new int[arcCount];
+        Arrays.fill(up, Double.POSITIVE_INFINITY);
+        Arrays.fill(down, Double.POSITIVE_INFINITY);
+        Arrays.fill(upMiddle, -1);
+        Arrays.fill(downMiddle, -1);
+        for (int e = 0; e < edgeArc.length; e++) {
+            int code = edgeArc[e];
+            if (code < 0) {
+                continue;
+            }
+            int a = code >>> 1;
+            if ((code & 1) == 0) {
+                up[a] = Math.min(up[a], edgeWeight[e]);
+            } else {
+                down[a] = Math.min(down[a], edgeWeight[e]);
+            }
+        }
+        try (WorkerPool pool = new WorkerPool("cch-customization")) {
+            for (int l = 0; l < levelOffset.length - 1; l++) {
+                int begin = levelOffset[l];
+                pool.forEach(levelOffset[l + 1] - begin, CUSTOMIZATION_CHUNK,
+                        (worker, i) -> relaxLowerTriangles(levelNodes[begin + i], up, down, upMiddle, downMiddle));
+            }
+        }
+        return new Weights(up, down, upMiddle, downMiddle);
+    }
+    private void relaxLowerTriangles(int x, double[] up, double[] down, int[] upMiddle, int[] downMiddle) {
+        int xEnd = upOffset[x + 1];
+        for (int i = downOffset[x]; i < downOffset[x + 1]; i++) {
+            int lower = downArc[i];
+            int w = arcTail[lower];
+            double xToW = down[lower];
+            double wToX = up[lower];
+            int p = upOffset[x];
+            for (int a = lower + 1, end = upOffset[w + 1]; a < end; a++) {
+                int y = upHead[a];
+                while (p < xEnd && upHead[p] < y) {
+                    p++;
+                }
+                double viaUp = xToW + up[a];
+                if (viaUp < up[p]) {
+                    up[p] = viaUp;
+                    upMiddle[p] = w;
+                }
+                double viaDown = down[a] + wToX;
+                if (viaDown < down[p]) {
+                    down[p] = viaDown;
+                    downMiddle[p] = w;
+                }
+            }
+        }
+    }
+    int search(SearchContext fwd, Weights weights, VirtualNode source, VirtualNode target) {
+        SearchContext bwd = fwd.reverse();
+        fwd.nextRun();
+        bwd.nextRun();
+        for (int i = 0; i < source.size(); i++) {
+            fwd.seed(rank[source.nodes()[i]], source.cost()[i], source.cost()[i]);
+        }
+        for (int i = 0; i < target.size(); i++) {
+            bwd.seed(rank[target.nodes()[i]], target.cost()[i], target.cost()[i]);
+        }
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        boolean forwardTurn = true;
+        while (true) {
+            boolean fwdOpen = !fwd.heap.isEmpty() && fwd.heap.peekKey() < best;
+            boolean bwdOpen = !bwd.heap.isEmpty() && bwd.heap.peekKey() < best;
+            if (!fwdOpen && !bwdOpen) {
+                break;
+            }
+            boolean forward = fwdOpen && (forwardTurn || !bwdOpen);
+            forwardTurn = !forwardTurn;
+            SearchContext self = forward ? fwd : bwd;
+            SearchContext other = forward ? bwd : fwd;
+            int u = self.heap.pollMin();
+            self.close(u);
+            double distU = self.dist[u];
+            double total = distU + other.getDist(u);
+            if (total < best) {
+                best = total;
+                meet = u;
+            }
+            double[] relax = forward ? weights.up : weights.down;
+            double[] stall = forward ? weights.down : weights.up;
+            if (!isStalled(self, u, distU, stall)) {
+                relaxUpward(self, u, distU, relax);
+            }
+        }
+        fwd.heap.clear();
+        bwd.heap.clear();
+        return meet;
+    }
+    double distance(SearchContext fwd, int meet) {
+        return fwd.getDist(meet) + fwd.reverse().getDist(meet);
+    }
+    int[] unpackPath(SearchContext fwd, Weights weights, int meet) {
+        return unpackPath(fwd, weights, meet, fwd.reverse()::getPrev);
+    }
+    private int[] unpackPath(SearchContext fwd, Weights weights, int meet, IntUnaryOperator backwardPrev) {
+        int forwardCount = 0;
+        for (int a = fwd.getPrev(meet); a != -1; a = fwd.getPrev(arcTail[a])) {
+            forwardCount++;
+        }
+        int[] ranks = new int[forwardCount + 1];
+        int i = forwardCount;
+        ranks[i] = meet;
+        for (int a = fwd.getPrev(meet); a != -1; a = fwd.getPrev(arcTail[a])) {
+            ranks[--i] = arcTail[a];
+        }
+        PathBuilder path = new PathBuilder();
+        path.add(nodeOfRank[ranks[0]]);
+        for (int k = 1; k < ranks.length; k++) {
+            unpack(ranks[k - 1], ranks[k], weights, path);
+        }
+        int at = meet;
+        for (int a = backwardPrev.applyAsInt(meet); a != -1; a = backwardPrev.applyAsInt(at)) {
+            unpack(at, arcTail[a], weights, path);
+            at = arcTail[a];
+        }
+        return path.toArray();
+    }
+    double[][] manyToMany(SearchContext ctx, Weights weights, VirtualNode[] sources, VirtualNode[] targets, int[][][] paths) {
+        double[][] dist = new double[sources.length][targets.length];
+        for (double[] row : dist) {
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+        }
+        BucketIndex buckets = new BucketIndex();
+        for (int j = 0; j < targets.length; j++) {
+            if (targets[j] != null) {
+                int target = j;
+                upwardSearch(ctx, targets[j], weights.down, weights.up, (node, d) -> buckets.add(node, target, d, ctx.getPrev(node)));
+            }
+        }
+        buckets.seal(nodeCount);
+        int[] meet = new int[targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i] != null) {
+                double[] row = dist[i];
+                Arrays.fill(meet, -1);
+                upwardSearch(ctx, sources[i], weights.up, weights.down, (node, d) -> buckets.relax(node, d, row, meet));
+                for (int j = 0; paths != null && j < targets.length; j++) {
+                    int target = j;
+                    if (meet[j] >= 0) {
+                        paths[i][j] = unpackPath(ctx, weights, meet[j], node -> buckets.prev(node, target));
+                    }
+                }
+            }
+        }
+        return dist;
+    }
+    private void upwardSearch(SearchContext ctx, VirtualNode source, double[] relax, double[] stall, SettledVisitor visitor) {
+        ctx.nextRun();
+        IndexedMinHeap heap = ctx.heap;
+        for (int i = 0; i < source.size(); i++) {
+            ctx.seed(rank[source.nodes()[i]], source.cost()[i], source.cost()[i]);
+        }
+        while (!heap.isEmpty()) {
+            int u = heap.pollMin();
+            ctx.close(u);
+            double distU = ctx.dist[u];
+            if (!isStalled(ctx, u, distU, stall)) {
+                visitor.settled(u, distU);
+                relaxUpward(ctx, u, distU, relax);
+            }
+        }
+    }
+    private void relaxUpward(SearchContext self, int u, double distU, double[] weight) {
+        self.relaxed += upOffset[u + 1] - upOffset[u];
+        for (int a = upOffset[u], end = upOffset[u + 1]; a < end; a++) {
+            int v = upHead[a];
+            if (self.isClosed(v)) {
+                continue;
+            }
+            double cand = distU + weight[a];
+            if (cand < self.getDist(v)) {
+                self.setDist(v, cand);
+                self.setPrev(v, a);
+                self.heap.pushOrDecrease(v, cand);
+            }
+        }
+    }
+    private boolean isStalled(SearchContext self, int u, double distU, double[] weight) {
+        for (int a = upOffset[u], end = upOffset[u + 1]; a < end; a++) {
+            if (self.getDist(upHead[a]) + weight[a] < distU) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private void unpack(int from, int to, Weights weights, PathBuilder path) {
+        int middle;
+        if (from < to) {
+            middle = weights.upMiddle[findArc(from, to)];
+        } else {
+            middle = weights.downMiddle[findArc(to, from)];
+        }
+        if (middle < 0) {
+            path.add(nodeOfRank[to]);
+            return;
+        }
+        unpack(from, middle, weights, path);
+        unpack(middle, to, weights, path);
+    }
+    private int findArc(int tail, int head) {
+        int a = Arrays.binarySearch(upHead, upOffset[tail], upOffset[tail + 1], head);
+        if (a < 0) {
+            throw new IllegalStateException("Missing arc " + tail + " -> " + head);
+        }
+        return a;
+    }
+    static CustomizableHierarchy build(int[] edgeFrom, int[] edgeTo, int[] nodeLatE7, int[] nodeLonE7, double lonScale, long graphFingerprint) {
+        int nodeCount = nodeLatE7.length;
+        int[] rank = NestedDissection.order(nodeCount, edgeFrom, edgeTo, nodeLatE7, nodeLonE7, lonScale);
+        int[][] up = new int[nodeCount][];
+        int[] upCount = new int[nodeCount];
+        for (int e = 0; e < edgeFrom.length; e++) {
+            int a = rank[edgeFrom[e]];
+            int b = rank[edgeTo[e]];
+            if (a == b) {
+                continue;
+            }
+            int low = Math.min(a, b);
+            up[low] = appendTo(up[low], upCount[low]++, Math.max(a, b));
+        }
+        for (int r = 0; r < nodeCount; r++) {
+            up[r] = up[r] == null ? new int[0] : sortedDistinct(up[r], upCount[r]);
+        }
+        for (int r = 0; r < nodeCount; r++) {
+            int[] neighbors = up[r];
+            if (neighbors.length > 1) {
+                int parent = neighbors[0];
+                up[parent] = mergeSorted(up[parent], neighbors, 1);
+            }
+        }
+        int[] upOffset = new int[nodeCount + 1];
+        for (int r = 0; r < nodeCount; r++) {
+            upOffset[r + 1] = upOffset[r] + up[r].length;
+        }
+        int[] upHead = new int[upOffset[nodeCount]];
+        for (int r = 0; r < nodeCount; r++) {
+            System.arraycopy(up[r], 0, upHead, upOffset[r], up[r].length);
+            up[r] = null;
+        }
+        int[] edgeArc = new int[edgeFrom.length];
+        for (int e = 0; e < edgeFrom.length; e++) {
+            int a = rank[edgeFrom[e]];
+            int b = rank[edgeTo[e]];
+            if (a == b) {
+                edgeArc[e] = -1;
+                continue;
+            }
+            int low = Math.min(a, b);
+            int arc = Arrays.binarySearch(upHead, upOffset[low], upOffset[low + 1], Math.max(a, b));
+            edgeArc[e] = (arc << 1) | (a < b ? 0 : 1);
+        }
+        return new CustomizableHierarchy(nodeCount, graphFingerprint, rank, upOffset, upHead, edgeArc);
+    }
+    private static int[] appendTo(int[] list, int size, int value) {
+        if (list == null) {
+            list = new int[4];
+        } else if (size == list.length) {
+            list = Arrays.copyOf(list, size * 2);
+        }
+        list[size] = value;
+        return list;
+    }
+    private static int[] sortedDistinct(int[] values, int size) {
+        Arrays.sort(values, 0, size);
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (n == 0 || values[n - 1] != values[i]) {
+                values[n++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, n);
+    }
+    private static int[] mergeSorted(int[] a, int[] b, int bStart) {
+        int[] out = new int[a.length + b.length - bStart];
+        int i = 0;
+        int j = bStart;
+        int n = 0;
+        while (i < a.length || j < b.length) {
+            int next;
+            if (j == b.length || (i < a.length && a[i] <= b[j])) {
+                next = a[i++];
+            } else {
+                next = b[j++];
+            }
+            if (n == 0 || out[n - 1] != next) {
+                out[n++] = next;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+    void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_VERSION);
+            out.writeLong(graphFingerprint);
+            out.writeInt(nodeCount);
+            writeIntArray(out, rank);
+            writeIntArray(out, upOffset);
+            writeIntArray(out, upHead);
+            writeIntArray(out, edgeArc);
+        }
+    }
+    static CustomizableHierarchy load(File file, int expectedNodeCount, long expectedFingerprint) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Customizable hierarchy version mismatch");
+            }
+            long fingerprint = in.readLong();
+            int nodeCount = in.readInt();
+            if (fingerprint != expectedFingerprint || nodeCount != expectedNodeCount) {
+                throw new IOException("Customizable hierarchy does not match graph");
+            }
+            int[] rank = readIntArray(in);
+            int[] upOffset = readIntArray(in);
+            int[] upHead = readIntArray(in);
+            int[] edgeArc = readIntArray(in);
+            if (rank.length != nodeCount || upOffset.length != nodeCount + 1 || upOffset[nodeCount] != upHead.length) {
+                throw new IOException("Corrupt customizable hierarchy");
+            }
+            try {
+                if (in.read() != -1) {
+                    throw new IOException("Trailing bytes in customizable hierarchy");
+                }
+            } catch (EOFException ignored) {
+            }
+            return new CustomizableHierarchy(nodeCount, fingerprint, rank, upOffset, upHead, edgeArc);
+        }
+    }
+    private static void writeIntArray(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+    private static int[] readIntArray(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+    static final class Weights {
+        private final double[] up;
+        private final double[] down;
+        private final int[] upMiddle;
+        private final int[] downMiddle;
+        private Weights(double[] up, double[] down, int[] upMiddle, int[] downMiddle) {
+            this.up = up;
+            this.down = down;
+            this.upMiddle = upMiddle;
+            this.downMiddle = downMiddle;
+        }
+    }
+    @FunctionalInterface
+    private interface SettledVisitor {
+        void settled(int node, double dist);
+    }
+    private static final class PathBuilder {
+        private int[] nodes = new int[256];
+        private int size;
+        void add(int node) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            nodes[size++] = node;
+        }
+        int[] toArray() {
+            return Arrays.copyOf(nodes, size);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.hanoimap;
+import java.util.List;
+public record DistanceMatrix(double[][] distances, List<List<LatLon>> paths) {
+    public int sourceCount() {
+        return distances.length;
+    }
+    public int targetCount() {
+        return distances.length == 0 ? 0 : distances[0].length;
+    }
+    public double distance(int source, int target) {
+        return distances[source][target];
+    }
+    public boolean hasPaths() {
+        return paths != null;
+    }
+    public List<LatLon> path(int source, int target) {
+        return paths.get(source * targetCount() + target);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.hanoimap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+final class EngineRegistry {
+    static final List<String> NAMES = List.of("manual", "graphhopper");
+    private final String osmFile;
+    private final String graphDir;
+    private final ConcurrentHashMap<String, CompletableFuture<RoutingEngine>> engines = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Failure> failures = new ConcurrentHashMap<>();
+    private final long retryBackoffNs = Long.parseLong(System.getenv().getOrDefault("ENGINE_RETRY_BACKOFF_SECONDS", "300")) * 1_000_000_000L;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "engine-loader");
+        t.setDaemon(true);
+        return t;
+    });
+    EngineRegistry(String osmFile, String graphDir) {
+        this.osmFile = osmFile;
+        this.graphDir = graphDir;
+    }
+    static String normalize(String name) {
+        String n = name == null || name.isBlank() ? "manual" : name.trim().toLowerCase();
+        if (!NAMES.contains(n)) {
+            throw new IllegalArgumentException("Unknown engine: " + name);
+        }
+        return n;
+    }
+    CompletableFuture<RoutingEngine> load(String name) {
+        String n = normalize(name);
+        CompletableFuture<RoutingEngine> existing = engines.get(n);
+        if (existing != null) {
+            return existing;
+        }
+        Failure failure = failures.get(n);
+        if (failure != null && System.nanoTime() - failure.atNs() < retryBackoffNs) {
+            return CompletableFuture.failedFuture(new IllegalStateException(failure.message()));
+        }
+        CompletableFuture<RoutingEngine> created = new CompletableFuture<>();
+        existing = engines.putIfAbsent(n, created);
+        if (existing != null) {
+            return existing;
+        }
+        loader.execute(() -> {
+            try {
+                RoutingEngine engine = create(n);
+                failures.remove(n);
+                created.complete(engine);
+            } catch (Throwable e) {
+                System.out.println("Engine " + n + " failed to load: " + e);
+                failures.put(n, new Failure("Engine " + n + " failed to load: " + e.getMessage(), System.nanoTime()));
+                engines.remove(n, created);
+                created.completeExceptionally(e);
+            }
+        });
+        return created;
+    }
+    CompletableFuture<RoutingEngine> retry(String name) {
+        failures.remove(normalize(name));
+        return load(name);
+    }
+    String failure(String name) {
+        String n = normalize(name);
+        Failure failure = failures.get(n);
+        return failure == null || engines.containsKey(n) ? null : failure.message();
+    }
+    RoutingEngine await(String name) {
+        try {
+            return load(name).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+    RoutingEngine ready(String name) {
+        CompletableFuture<RoutingEngine> future = engines.get(normalize(name));
+        return future != null && future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+    Map<String, String> states() {
+        Map<String, String> out = new LinkedHashMap<>();
+        for (String name : NAMES) {
+            CompletableFuture<RoutingEngine> future = engines.get(name);
+            out.put(name, future == null ? failures.containsKey(name) ? "failed" : "unloaded" : future.isDone() ? "ready" : "loading");
+        }
+        return out;
+    }
+    private RoutingEngine create(String name) {
+        long startNs = System.nanoTime();
+        RoutingEngine engine = name.equals("graphhopper") ? new GraphHopperRoutingEngine(osmFile, graphDir) : new SimpleRoutingEngine(osmFile, graphDir);
+        engine.init();
+        System.out.println("Engine " + name + " ready in " + (System.nanoTime() - startNs) / 1_000_000L + " ms");
+        return engine;
+    }
+    private record Failure(String message, long atNs) {
+    }
+}
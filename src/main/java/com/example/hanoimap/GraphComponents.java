@@ -0,0 +1,145 @@
+package com.example.hanoimap;
+import java.util.Arrays;
+final class GraphComponents {
+    private final int[] strong;
+    private final int[] weak;
+    private final int strongCount;
+    private final int weakCount;
+    private final int largest;
+    private final int largestSize;
+    GraphComponents(int[] strong, int[] weak) {
+        this.strong = strong;
+        this.weak = weak;
+        int strongMax = -1;
+        int weakMax = -1;
+        for (int v = 0; v < strong.length; v++) {
+            strongMax = Math.max(strongMax, strong[v]);
+            weakMax = Math.max(weakMax, weak[v]);
+        }
+        this.strongCount = strongMax + 1;
+        this.weakCount = weakMax + 1;
+        int[] sizes = new int[strongCount];
+        for (int c : strong) {
+            sizes[c]++;
+        }
+        int best = -1;
+        for (int c = 0; c < strongCount; c++) {
+            if (best < 0 || sizes[c] > sizes[best]) {
+                best = c;
+            }
+        }
+        this.largest = best;
+        this.largestSize = best < 0 ? 0 : sizes[best];
+    }
+    int[] strong() {
+        return strong;
+    }
+    int[] weak() {
+        return weak;
+    }
+    int strongCount() {
+        return strongCount;
+    }
+    int weakCount() {
+        return weakCount;
+    }
+    int largest() {
+        return largest;
+    }
+    int largestSize() {
+        return largestSize;
+    }
+    boolean inLargest(int node) {
+        return strong[node] == largest;
+    }
+    boolean mayReach(int from, int to) {
+        return weak[from] == weak[to] && strong[from] >= strong[to];
+    }
+    static GraphComponents compute(int[] edgeOffset, int[] edgeTo) {
+        int nodeCount = edgeOffset.length - 1;
+        return new GraphComponents(tarjan(nodeCount, edgeOffset, edgeTo), unionFind(nodeCount, edgeOffset, edgeTo));
+    }
+    private static int[] tarjan(int nodeCount, int[] edgeOffset, int[] edgeTo) {
+        int[] index = new int[nodeCount];
+        int[] low = new int[nodeCount];
+        int[] component = new int[nodeCount];
+        int[] stack = new int[nodeCount];
+        int[] callNode = new int[nodeCount];
+        int[] callEdge = new int[nodeCount];
+        Arrays.fill(index, -1);
+        int nextIndex = 0;
+        int stackSize = 0;
+        int componentCount = 0;
+        for (int root = 0; root < nodeCount; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callNode[0] = root;
+            callEdge[0] = edgeOffset[root];
+            index[root] = low[root] = nextIndex++;
+            stack[stackSize++] = root;
+            component[root] = -1;
+            while (depth >= 0) {
+                int u = callNode[depth];
+                if (callEdge[depth] < edgeOffset[u + 1]) {
+                    int v = edgeTo[callEdge[depth]++];
+                    if (index[v] < 0) {
+                        index[v] = low[v] = nextIndex++;
+                        stack[stackSize++] = v;
+                        component[v] = -1;
+                        depth++;
+                        callNode[depth] = v;
+                        callEdge[depth] = edgeOffset[v];
+                    } else if (component[v] < 0) {
+                        low[u] = Math.min(low[u], index[v]);
+                    }
+                    continue;
+                }
+                if (low[u] == index[u]) {
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        component[w] = componentCount;
+                    } while (w != u);
+                    componentCount++;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = callNode[depth];
+                    low[parent] = Math.min(low[parent], low[u]);
+                }
+            }
+        }
+        return component;
+    }
+    private static int[] unionFind(int nodeCount, int[] edgeOffset, int[] edgeTo) {
+        int[] parent = new int[nodeCount];
+        for (int v = 0; v < nodeCount; v++) {
+            parent[v] = v;
+        }
+        for (int u = 0; u < nodeCount; u++) {
+            for (int e = edgeOffset[u]; e < edgeOffset[u + 1]; e++) {
+                int a = find(parent, u);
+                int b = find(parent, edgeTo[e]);
+                if (a != b) {
+                    parent[Math.max(a, b)] = Math.min(a, b);
+                }
+            }
+        }
+        int[] label = new int[nodeCount];
+        int count = 0;
+        for (int v = 0; v < nodeCount; v++) {
+            int r = find(parent, v);
+            label[v] = r == v ? count++ : label[r];
+        }
+        return label;
+    }
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+}
@@ -4,18 +4,33 @@ import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.config.Profile;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithmFactorySimple;
+import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.Parameters;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.exceptions.PointNotFoundException;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 public class GraphHopperRoutingEngine implements RoutingEngine {
     private final String osmFile;
     private final String graphDir;
     private GraphHopper hopper;
+    private Weighting weighting;
+    private EdgeFilter snapFilter;
     public GraphHopperRoutingEngine(String osmFile, String graphDir) {
         this.osmFile = osmFile;
         this.graphDir = graphDir;
@@ -27,9 +42,18 @@ public class GraphHopperRoutingEngine implements RoutingEngine {
                 .setGraphHopperLocation(graphDir)
                 .setProfiles(new Profile("car").setVehicle("car").setWeighting("fastest").setTurnCosts(true));
         hopper.importOrLoad();
+        Profile profile = hopper.getProfile("car");
+        weighting = hopper.createWeighting(profile, new PMap());
+        snapFilter = new DefaultSnapFilter(weighting,
+                hopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profile.getName())));
     }
     @Override
     public List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon) {
+        return route(fromLat, fromLon, toLat, toLon, null, null);
+    }
+    @Override
+    public List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon, String metric, QueryTrace trace) {
+        requireDefaultMetric(metric);
         GHRequest req = new GHRequest(fromLat, fromLon, toLat, toLon).setProfile("car");
         GHResponse rsp = hopper.route(req);
         if (rsp.hasErrors()) {
@@ -39,9 +63,94 @@ public class GraphHopperRoutingEngine implements RoutingEngine {
             if (err != null) throw new RuntimeException(err);
             throw new RuntimeException("GraphHopper routing error");
         }
+        if (trace != null) {
+            trace.phase("search");
+            trace.count("settled", rsp.getHints().getLong("visited_nodes.sum", 0));
+        }
         ResponsePath path = rsp.getBest();
-        PointList pl = path.getPoints();
-        List<LatLon> result = new ArrayList<>();
+        List<LatLon> points = toLatLon(path.getPoints());
+        if (trace != null) {
+            trace.phase("unpack");
+        }
+        return points;
+    }
+    @Override
+    public List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon, String metric) {
+        requireDefaultMetric(metric);
+        return route(fromLat, fromLon, toLat, toLon);
+    }
+    @Override
+    public DistanceMatrix matrix(List<LatLon> sources, List<LatLon> targets, boolean includePaths, String metric) {
+        requireDefaultMetric(metric);
+        return matrix(sources, targets, includePaths);
+    }
+    @Override
+    public List<String> metrics() {
+        return List.of();
+    }
+    @Override
+    public String metricKey(String metric) {
+        requireDefaultMetric(metric);
+        return "";
+    }
+    @Override
+    public void defineMetric(String name, Map<String, Double> roadClassFactors) {
+        throw new IllegalArgumentException("Custom metrics are not supported by the graphhopper engine");
+    }
+    @Override
+    public List<Isochrone> isochrones(double lat, double lon, double[] limits, String metric) {
+        throw new IllegalArgumentException("Isochrones are not supported by the graphhopper engine");
+    }
+    private static void requireDefaultMetric(String metric) {
+        if (metric != null && !metric.isBlank()) {
+            throw new IllegalArgumentException("Metric '" + metric + "' is not supported by the graphhopper engine");
+        }
+    }
+    @Override
+    public DistanceMatrix matrix(List<LatLon> sources, List<LatLon> targets, boolean includePaths) {
+        Profile profile = hopper.getProfile("car");
+        Snap[] sourceSnaps = snapAll(sources);
+        Snap[] targetSnaps = snapAll(targets);
+        List<Snap> valid = new ArrayList<>();
+        for (Snap snap : sourceSnaps) {
+            if (snap != null) valid.add(snap);
+        }
+        for (Snap snap : targetSnaps) {
+            if (snap != null) valid.add(snap);
+        }
+        QueryGraph queryGraph = QueryGraph.create(hopper.getGraphHopperStorage(), valid);
+        Weighting queryWeighting = queryGraph.wrapWeighting(weighting);
+        AlgorithmOptions options = new AlgorithmOptions()
+                .setAlgorithm(Parameters.Algorithms.ASTAR_BI)
+                .setTraversalMode(profile.isTurnCosts() ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED);
+        RoutingAlgorithmFactorySimple factory = new RoutingAlgorithmFactorySimple();
+        int targetCount = targetSnaps.length;
+        double[][] dist = new double[sourceSnaps.length][targetCount];
+        List<List<LatLon>> paths = includePaths ? new ArrayList<>(Collections.nCopies(sourceSnaps.length * targetCount, List.of())) : null;
+        for (int i = 0; i < sourceSnaps.length; i++) {
+            for (int j = 0; j < targetCount; j++) {
+                dist[i][j] = Double.POSITIVE_INFINITY;
+                if (sourceSnaps[i] == null || targetSnaps[j] == null) continue;
+                Path path = factory.createAlgo(queryGraph, queryWeighting, options)
+                        .calcPath(sourceSnaps[i].getClosestNode(), targetSnaps[j].getClosestNode());
+                if (!path.isFound()) continue;
+                dist[i][j] = path.getDistance();
+                if (includePaths) paths.set(i * targetCount + j, toLatLon(path.calcPoints()));
+            }
+        }
+        return new DistanceMatrix(dist, paths);
+    }
+    private Snap[] snapAll(List<LatLon> points) {
+        var locationIndex = hopper.getLocationIndex();
+        Snap[] snaps = new Snap[points.size()];
+        for (int i = 0; i < snaps.length; i++) {
+            Snap snap = locationIndex.findClosest(points.get(i).lat(), points.get(i).lon(), snapFilter);
+            snaps[i] = snap.isValid() ? snap : null;
+        }
+        return snaps;
+    }
+    private static List<LatLon> toLatLon(PointList pl) {
+        List<LatLon> result = new ArrayList<>(pl.size());
         for (int i = 0; i < pl.size(); i++) {
             result.add(new LatLon(pl.getLat(i), pl.getLon(i)));
         }
@@ -59,7 +168,7 @@ public class GraphHopperRoutingEngine implements RoutingEngine {
             for (int i = 0; i < 200; i++) {
                 double lat = bbox.minLat + random.nextDouble() * (bbox.maxLat - bbox.minLat);
                 double lon = bbox.minLon + random.nextDouble() * (bbox.maxLon - bbox.minLon);
-                var qr = locationIndex.findClosest(lat, lon, EdgeFilter.ALL_EDGES);
+                var qr = locationIndex.findClosest(lat, lon, snapFilter);
                 if (qr != null && qr.isValid()) {
                     GHPoint snapped = qr.getSnappedPoint();
                     return new LatLon(snapped.lat, snapped.lon);
@@ -84,8 +193,28 @@ public class GraphHopperRoutingEngine implements RoutingEngine {
         if (hopper == null) return -1;
         var locationIndex = hopper.getLocationIndex();
         if (locationIndex == null) return -1;
-        var qr = locationIndex.findClosest(lat, lon, EdgeFilter.ALL_EDGES);
+        var qr = locationIndex.findClosest(lat, lon, snapFilter);
         if (qr == null || !qr.isValid()) return -1;
         return qr.getClosestNode();
     }
+    @Override
+    public long snapKey(double lat, double lon) {
+        return snapPoint(lat, lon).key();
+    }
+    @Override
+    public SnappedPoint snapPoint(double lat, double lon) {
+        if (hopper == null) return new SnappedPoint(lat, lon, -1, null);
+        var qr = hopper.getLocationIndex().findClosest(lat, lon, snapFilter);
+        if (qr == null || !qr.isValid()) return new SnappedPoint(lat, lon, -1, null);
+        return new SnappedPoint(lat, lon, snapKey(qr), qr);
+    }
+    @Override
+    public List<LatLon> route(SnappedPoint from, SnappedPoint to, String metric) {
+        return route(from.lat(), from.lon(), to.lat(), to.lon(), metric, null);
+    }
+    private static long snapKey(Snap qr) {
+        long latE7 = Math.round(qr.getSnappedPoint().getLat() * 1e7);
+        long lonE7 = Math.round(qr.getSnappedPoint().getLon() * 1e7);
+        return (latE7 << 32) | (lonE7 & 0xFFFFFFFFL);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package com.example.hanoimap;
+import java.util.Arrays;
+final class IndexedMinHeap {
+    private static final int ARITY = 4;
+    private int[] nodes;
+    private double[] keys;
+    private final int[] pos;
+    private int size;
+    long pushes;
+    long polls;
+    IndexedMinHeap(int nodeCount) {
+        nodes = new int[256];
+        keys = new double[256];
+        pos = new int[nodeCount];
+        Arrays.fill(pos, -1);
+    }
+    boolean isEmpty() {
+        return size == 0;
+    }
+    int size() {
+        return size;
+    }
+    boolean contains(int node) {
+        return pos[node] >= 0;
+    }
+    double peekKey() {
+        return keys[0];
+    }
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            pos[nodes[i]] = -1;
+        }
+        size = 0;
+    }
+    void pushOrDecrease(int node, double key) {
+        pushes++;
+        int i = pos[node];
+        if (i >= 0) {
+            if (key < keys[i]) {
+                siftUp(i, node, key);
+            }
+            return;
+        }
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size << 1);
+            keys = Arrays.copyOf(keys, size << 1);
+        }
+        siftUp(size++, node, key);
+    }
+    int pollMin() {
+        polls++;
+        int min = nodes[0];
+        pos[min] = -1;
+        int last = --size;
+        if (last > 0) {
+            siftDown(0, nodes[last], keys[last]);
+        }
+        return min;
+    }
+    private void siftUp(int i, int node, double key) {
+        while (i > 0) {
+            int parent = (i - 1) / ARITY;
+            if (keys[parent] <= key) {
+                break;
+            }
+            nodes[i] = nodes[parent];
+            keys[i] = keys[parent];
+            pos[nodes[i]] = i;
+            i = parent;
+        }
+        nodes[i] = node;
+        keys[i] = key;
+        pos[node] = i;
+    }
+    private void siftDown(int i, int node, double key) {
+        while (true) {
+            int first = i * ARITY + 1;
+            if (first >= size) {
+                break;
+            }
+            int best = first;
+            double bestKey = keys[first];
+            int end = Math.min(first + ARITY, size);
+            for (int c = first + 1; c < end; c++) {
+                if (keys[c] < bestKey) {
+                    best = c;
+                    bestKey = keys[c];
+                }
+            }
+            if (bestKey >= key) {
+                break;
+            }
+            nodes[i] = nodes[best];
+            keys[i] = bestKey;
+            pos[nodes[i]] = i;
+            i = best;
+        }
+        nodes[i] = node;
+        keys[i] = key;
+        pos[node] = i;
+    }
+}
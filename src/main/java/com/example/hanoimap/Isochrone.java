@@ -0,0 +1,4 @@
+package com.example.hanoimap;
+import java.util.List;
+public record Isochrone(double limit, List<List<List<LatLon>>> polygons) {
+}
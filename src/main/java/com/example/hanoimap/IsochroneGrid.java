@@ -0,0 +1,174 @@
+package com.example.hanoimap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+final class IsochroneGrid {
+    private static final int MARGIN = 2;
+    private static final int[] DX = {1, 0, -1, 0};
+    private static final int[] DY = {0, 1, 0, -1};
+    private final int originLatE7;
+    private final int originLonE7;
+    private final double cellLatE7;
+    private final double cellLonE7;
+    private final int width;
+    private final int height;
+    private final float[] cost;
+    IsochroneGrid(int minLatE7, int minLonE7, int maxLatE7, int maxLonE7, double cellLatE7, double cellLonE7) {
+        this.cellLatE7 = cellLatE7;
+        this.cellLonE7 = cellLonE7;
+        this.originLatE7 = (int) Math.floor(minLatE7 - MARGIN * cellLatE7);
+        this.originLonE7 = (int) Math.floor(minLonE7 - MARGIN * cellLonE7);
+        this.width = (int) Math.ceil((maxLonE7 - originLonE7) / cellLonE7) + MARGIN + 1;
+        this.height = (int) Math.ceil((maxLatE7 - originLatE7) / cellLatE7) + MARGIN + 1;
+        this.cost = new float[width * height];
+        Arrays.fill(cost, Float.POSITIVE_INFINITY);
+    }
+    void sample(double latE7, double lonE7, double value) {
+        int x = (int) ((lonE7 - originLonE7) / cellLonE7);
+        int y = (int) ((latE7 - originLatE7) / cellLatE7);
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return;
+        }
+        int cell = y * width + x;
+        if (value < cost[cell]) {
+            cost[cell] = (float) value;
+        }
+    }
+    void segment(double aLatE7, double aLonE7, double aCost, double bLatE7, double bLonE7, double bCost) {
+        double cells = Math.max(Math.abs(bLatE7 - aLatE7) / cellLatE7, Math.abs(bLonE7 - aLonE7) / cellLonE7);
+        int steps = (int) Math.ceil(cells * 2.0);
+        for (int i = 0; i <= steps; i++) {
+            double t = steps == 0 ? 0.0 : (double) i / steps;
+            sample(aLatE7 + t * (bLatE7 - aLatE7), aLonE7 + t * (bLonE7 - aLonE7), aCost + t * (bCost - aCost));
+        }
+    }
+    List<List<List<LatLon>>> polygons(double limit) {
+        boolean[] filled = new boolean[width * height];
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                int cell = y * width + x;
+                filled[cell] = cost[cell] <= limit || cost[cell - 1] <= limit || cost[cell + 1] <= limit
+                        || cost[cell - width] <= limit || cost[cell + width] <= limit
+                        || cost[cell - width - 1] <= limit || cost[cell - width + 1] <= limit
+                        || cost[cell + width - 1] <= limit || cost[cell + width + 1] <= limit;
+            }
+        }
+        List<List<List<LatLon>>> polygons = new ArrayList<>();
+        List<Long> outerAreas = new ArrayList<>();
+        List<List<LatLon>> holes = new ArrayList<>();
+        for (int[] ring : traceRings(filled)) {
+            long area = signedArea(ring);
+            if (area > 0) {
+                List<List<LatLon>> polygon = new ArrayList<>();
+                polygon.add(toLatLon(ring));
+                polygons.add(polygon);
+                outerAreas.add(area);
+            } else {
+                holes.add(toLatLon(ring));
+            }
+        }
+        for (List<LatLon> hole : holes) {
+            int owner = -1;
+            for (int i = 0; i < polygons.size(); i++) {
+                if ((owner < 0 || outerAreas.get(i) < outerAreas.get(owner)) && contains(polygons.get(i).get(0), hole.get(0))) {
+                    owner = i;
+                }
+            }
+            if (owner >= 0) {
+                polygons.get(owner).add(hole);
+            }
+        }
+        return polygons;
+    }
+    private List<int[]> traceRings(boolean[] filled) {
+        int stride = width + 1;
+        byte[] out = new byte[stride * (height + 1)];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (!filled[y * width + x]) {
+                    continue;
+                }
+                if (!isFilled(filled, x, y - 1)) {
+                    out[y * stride + x] |= 1;
+                }
+                if (!isFilled(filled, x + 1, y)) {
+                    out[y * stride + x + 1] |= 2;
+                }
+                if (!isFilled(filled, x, y + 1)) {
+                    out[(y + 1) * stride + x + 1] |= 4;
+                }
+                if (!isFilled(filled, x - 1, y)) {
+                    out[(y + 1) * stride + x] |= 8;
+                }
+            }
+        }
+        byte[] all = out.clone();
+        List<int[]> rings = new ArrayList<>();
+        int[] ring = new int[64];
+        for (int start = 0; start < out.length; start++) {
+            while (out[start] != 0) {
+                int firstDir = Integer.numberOfTrailingZeros(out[start]);
+                int vertex = start;
+                int dir = firstDir;
+                int prevDir = -1;
+                int count = 0;
+                do {
+                    out[vertex] &= (byte) ~(1 << dir);
+                    if (dir != prevDir) {
+                        if (count + 2 > ring.length) {
+                            ring = Arrays.copyOf(ring, ring.length * 2);
+                        }
+                        ring[count++] = vertex % stride;
+                        ring[count++] = vertex / stride;
+                    }
+                    prevDir = dir;
+                    vertex += DY[dir] * stride + DX[dir];
+                    dir = nextDirection(all[vertex], dir);
+                } while (vertex != start || dir != firstDir);
+                rings.add(prevDir == firstDir ? Arrays.copyOfRange(ring, 2, count) : Arrays.copyOf(ring, count));
+            }
+        }
+        return rings;
+    }
+    private static int nextDirection(byte mask, int dir) {
+        int left = (dir + 1) & 3;
+        if ((mask & (1 << left)) != 0) {
+            return left;
+        }
+        return (mask & (1 << dir)) != 0 ? dir : (dir + 3) & 3;
+    }
+    private boolean isFilled(boolean[] filled, int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height && filled[y * width + x];
+    }
+    private List<LatLon> toLatLon(int[] ring) {
+        List<LatLon> points = new ArrayList<>(ring.length / 2 + 1);
+        for (int i = 0; i < ring.length; i += 2) {
+            points.add(vertex(ring[i], ring[i + 1]));
+        }
+        points.add(points.get(0));
+        return points;
+    }
+    private LatLon vertex(int x, int y) {
+        return new LatLon((originLatE7 + y * cellLatE7) / 1e7, (originLonE7 + x * cellLonE7) / 1e7);
+    }
+    private static long signedArea(int[] ring) {
+        long area = 0;
+        for (int i = 0; i < ring.length; i += 2) {
+            int j = (i + 2) % ring.length;
+            area += (long) ring[i] * ring[j + 1] - (long) ring[j] * ring[i + 1];
+        }
+        return area;
+    }
+    private static boolean contains(List<LatLon> ring, LatLon p) {
+        boolean inside = false;
+        for (int i = 0, j = ring.size() - 1; i < ring.size(); j = i++) {
+            LatLon a = ring.get(i);
+            LatLon b = ring.get(j);
+            if ((a.lat() > p.lat()) != (b.lat() > p.lat())
+                    && p.lon() < (b.lon() - a.lon()) * (p.lat() - a.lat()) / (b.lat() - a.lat()) + a.lon()) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.hanoimap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+final class LandmarkTable {
+    private static final int FILE_VERSION = 1;
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final double RESOLUTION_METERS = 0.1;
+    private static final int SEED_ATTEMPTS = 8;
+    private final int nodeCount;
+    private final long graphFingerprint;
+    private final int[] landmarks;
+    private final int[] fromLandmark;
+    private final int[] toLandmark;
+    private LandmarkTable(int nodeCount, long graphFingerprint, int[] landmarks, int[] fromLandmark, int[] toLandmark) {
+        this.nodeCount = nodeCount;
+        this.graphFingerprint = graphFingerprint;
+        this.landmarks = landmarks;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+    }
+    int landmarkCount() {
+        return landmarks.length;
+    }
+    double lowerBound(int node, int goal) {
+        int count = landmarks.length;
+        int nodeBase = node * count;
+        int goalBase = goal * count;
+        int best = 0;
+        for (int l = 0; l < count; l++) {
+            int fromNode = fromLandmark[nodeBase + l];
+            int fromGoal = fromLandmark[goalBase + l];
+            if (fromNode != UNREACHABLE && fromGoal != UNREACHABLE) {
+                best = Math.max(best, fromGoal - fromNode - 1);
+            }
+            int toNode = toLandmark[nodeBase + l];
+            int toGoal = toLandmark[goalBase + l];
+            if (toNode != UNREACHABLE && toGoal != UNREACHABLE) {
+                best = Math.max(best, toNode - toGoal - 1);
+            }
+        }
+        return best * RESOLUTION_METERS;
+    }
+    static LandmarkTable build(int nodeCount, int landmarkCount, int[] nodeLatE7, int[] nodeLonE7, double lonScale,
+                               int[] edgeOffset, int[] edgeTo, int[] revOffset, int[] revEdge, int[] edgeFrom,
+                               float[] edgeWeight, long graphFingerprint) {
+        try (WorkerPool pool = new WorkerPool("alt-preprocessing")) {
+            SearchContext[] contexts = new SearchContext[pool.workers()];
+            int[] reach = new int[1];
+            int seed = pickSeed(nodeCount, edgeOffset, edgeTo, edgeWeight, reach);
+            int[] landmarks = selectFarthest(nodeCount, Math.min(landmarkCount, Math.max(1, reach[0])), nodeLatE7, nodeLonE7, lonScale,
+                    edgeOffset, edgeTo, edgeWeight, seed);
+            int count = landmarks.length;
+            int[] fromLandmark = new int[nodeCount * count];
+            int[] toLandmark = new int[nodeCount * count];
+            pool.forEach(count * 2, 1, (worker, task) -> {
+                SearchContext ctx = contexts[worker];
+                if (ctx == null) {
+                    ctx = new SearchContext(nodeCount);
+                    contexts[worker] = ctx;
+                }
+                int l = task >> 1;
+                if ((task & 1) == 0) {
+                    dijkstra(ctx, landmarks[l], edgeOffset, null, edgeTo, edgeWeight);
+                    store(ctx, nodeCount, count, l, fromLandmark);
+                } else {
+                    dijkstra(ctx, landmarks[l], revOffset, revEdge, edgeFrom, edgeWeight);
+                    store(ctx, nodeCount, count, l, toLandmark);
+                }
+            });
+            return new LandmarkTable(nodeCount, graphFingerprint, landmarks, fromLandmark, toLandmark);
+        }
+    }
+    private static int pickSeed(int nodeCount, int[] edgeOffset, int[] edgeTo, float[] edgeWeight, int[] reach) {
+        SearchContext ctx = new SearchContext(nodeCount);
+        Random random = new Random(nodeCount);
+        int bestSeed = 0;
+        int bestReach = 0;
+        for (int attempt = 0; attempt < SEED_ATTEMPTS && nodeCount > 0; attempt++) {
+            int seed = random.nextInt(nodeCount);
+            int reached = dijkstra(ctx, seed, edgeOffset, null, edgeTo, edgeWeight);
+            if (reached > bestReach) {
+                bestReach = reached;
+                bestSeed = seed;
+            }
+            if (reached * 2 > nodeCount) {
+                break;
+            }
+        }
+        reach[0] = bestReach;
+        return bestSeed;
+    }
+    private static int[] selectFarthest(int nodeCount, int count, int[] nodeLatE7, int[] nodeLonE7, double lonScale,
+                                        int[] edgeOffset, int[] edgeTo, float[] edgeWeight, int seed) {
+        SearchContext ctx = new SearchContext(nodeCount);
+        dijkstra(ctx, seed, edgeOffset, null, edgeTo, edgeWeight);
+        double[] minDistSq = new double[nodeCount];
+        double cx = 0.0;
+        double cy = 0.0;
+        int reachable = 0;
+        for (int v = 0; v < nodeCount; v++) {
+            if (ctx.isClosed(v)) {
+                cx += nodeLonE7[v] * lonScale;
+                cy += nodeLatE7[v];
+                reachable++;
+            }
+        }
+        cx /= Math.max(1, reachable);
+        cy /= Math.max(1, reachable);
+        int best = seed;
+        double bestScore = -1.0;
+        for (int v = 0; v < nodeCount; v++) {
+            if (!ctx.isClosed(v)) {
+                minDistSq[v] = -1.0;
+                continue;
+            }
+            minDistSq[v] = Double.POSITIVE_INFINITY;
+            double dx = nodeLonE7[v] * lonScale - cx;
+            double dy = nodeLatE7[v] - cy;
+            if (dx * dx + dy * dy > bestScore) {
+                bestScore = dx * dx + dy * dy;
+                best = v;
+            }
+        }
+        int[] landmarks = new int[count];
+        for (int l = 0; l < count; l++) {
+            landmarks[l] = best;
+            minDistSq[best] = -1.0;
+            double lx = nodeLonE7[best] * lonScale;
+            double ly = nodeLatE7[best];
+            bestScore = -1.0;
+            for (int v = 0; v < nodeCount; v++) {
+                if (minDistSq[v] < 0.0) {
+                    continue;
+                }
+                double dx = nodeLonE7[v] * lonScale - lx;
+                double dy = nodeLatE7[v] - ly;
+                minDistSq[v] = Math.min(minDistSq[v], dx * dx + dy * dy);
+                if (minDistSq[v] > bestScore) {
+                    bestScore = minDistSq[v];
+                    best = v;
+                }
+            }
+        }
+        return landmarks;
+    }
+    private static int dijkstra(SearchContext ctx, int source, int[] offset, int[] edgeIds, int[] target, float[] weight) {
+        ctx.nextRun();
+        IndexedMinHeap heap = ctx.heap;
+        ctx.setDist(source, 0.0);
+        heap.pushOrDecrease(source, 0.0);
+        int settled = 0;
+        while (!heap.isEmpty()) {
+            int u = heap.pollMin();
+            ctx.close(u);
+            settled++;
+            double distU = ctx.dist[u];
+            for (int i = offset[u], end = offset[u + 1]; i < end; i++) {
+                int e = edgeIds == null ? i : edgeIds[i];
+                int v = target[e];
+                if (ctx.isClosed(v)) {
+                    continue;
+                }
+                double cand = distU + weight[e];
+                if (cand < ctx.getDist(v)) {
+                    ctx.setDist(v, cand);
+                    heap.pushOrDecrease(v, cand);
+                }
+            }
+        }
+        return settled;
+    }
+    private static void store(SearchContext ctx, int nodeCount, int count, int l, int[] table) {
+        for (int v = 0; v < nodeCount; v++) {
+            int slot = v * count + l;
+            if (!ctx.isClosed(v)) {
+                table[slot] = UNREACHABLE;
+                continue;
+            }
+            long q = (long) Math.floor(ctx.dist[v] / RESOLUTION_METERS);
+            table[slot] = (int) Math.min(q, UNREACHABLE - 1L);
+        }
+    }
+    void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_VERSION);
+            out.writeLong(graphFingerprint);
+            out.writeInt(nodeCount);
+            out.writeInt(landmarks.length);
+            for (int l : landmarks) {
+                out.writeInt(l);
+            }
+            for (int i = 0; i < fromLandmark.length; i++) {
+                out.writeInt(fromLandmark[i]);
+                out.writeInt(toLandmark[i]);
+            }
+        }
+    }
+    static LandmarkTable load(File file, int expectedNodeCount, long expectedFingerprint) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Landmark table version mismatch");
+            }
+            long fingerprint = in.readLong();
+            int nodeCount = in.readInt();
+            if (fingerprint != expectedFingerprint || nodeCount != expectedNodeCount) {
+                throw new IOException("Landmark table does not match graph");
+            }
+            int count = in.readInt();
+            int[] landmarks = new int[count];
+            for (int l = 0; l < count; l++) {
+                landmarks[l] = in.readInt();
+            }
+            int[] fromLandmark = new int[nodeCount * count];
+            int[] toLandmark = new int[nodeCount * count];
+            for (int i = 0; i < fromLandmark.length; i++) {
+                fromLandmark[i] = in.readInt();
+                toLandmark[i] = in.readInt();
+            }
+            try {
+                if (in.read() != -1) {
+                    throw new IOException("Trailing bytes in landmark table");
+                }
+            } catch (EOFException ignored) {
+            }
+            return new LandmarkTable(nodeCount, fingerprint, landmarks, fromLandmark, toLandmark);
+        }
+    }
+}
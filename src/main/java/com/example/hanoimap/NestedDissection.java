@@ -0,0 +1,156 @@
+package com.example.hanoimap;
+import java.util.Arrays;
+final class NestedDissection {
+    private static final int LEAF_SIZE = 4;
+    private final int[] offset;
+    private final int[] neighbor;
+    private final int[] nodeLatE7;
+    private final int[] nodeLonE7;
+    private final double lonScale;
+    private final int[] segment;
+    private final int[] side;
+    private final int[] separator;
+    private int stamp;
+    private NestedDissection(int nodeCount, int[] edgeFrom, int[] edgeTo, int[] nodeLatE7, int[] nodeLonE7, double lonScale) {
+        this.nodeLatE7 = nodeLatE7;
+        this.nodeLonE7 = nodeLonE7;
+        this.lonScale = lonScale;
+        this.offset = new int[nodeCount + 1];
+        for (int e = 0; e < edgeFrom.length; e++) {
+            offset[edgeFrom[e] + 1]++;
+            offset[edgeTo[e] + 1]++;
+        }
+        for (int v = 0; v < nodeCount; v++) {
+            offset[v + 1] += offset[v];
+        }
+        this.neighbor = new int[offset[nodeCount]];
+        int[] fill = Arrays.copyOf(offset, nodeCount);
+        for (int e = 0; e < edgeFrom.length; e++) {
+            neighbor[fill[edgeFrom[e]]++] = edgeTo[e];
+            neighbor[fill[edgeTo[e]]++] = edgeFrom[e];
+        }
+        this.segment = new int[nodeCount];
+        this.side = new int[nodeCount];
+        this.separator = new int[nodeCount];
+    }
+    static int[] order(int nodeCount, int[] edgeFrom, int[] edgeTo, int[] nodeLatE7, int[] nodeLonE7, double lonScale) {
+        return new NestedDissection(nodeCount, edgeFrom, edgeTo, nodeLatE7, nodeLonE7, lonScale).order();
+    }
+    private int[] order() {
+        int nodeCount = segment.length;
+        int[] nodes = new int[nodeCount];
+        for (int v = 0; v < nodeCount; v++) {
+            nodes[v] = v;
+        }
+        int[] scratch = new int[nodeCount];
+        int[] rank = new int[nodeCount];
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = nodeCount;
+        while (top > 0) {
+            int end = stack[--top];
+            int begin = stack[--top];
+            if (end - begin <= LEAF_SIZE) {
+                for (int i = begin; i < end; i++) {
+                    rank[nodes[i]] = i;
+                }
+                continue;
+            }
+            int mid = split(nodes, begin, end);
+            int lowerEnd = begin;
+            int separatorStart = end;
+            for (int i = begin; i < mid; i++) {
+                if (separator[nodes[i]] != stamp) {
+                    scratch[lowerEnd++] = nodes[i];
+                }
+            }
+            int upperEnd = lowerEnd;
+            for (int i = mid; i < end; i++) {
+                if (separator[nodes[i]] != stamp) {
+                    scratch[upperEnd++] = nodes[i];
+                }
+            }
+            for (int i = begin; i < end; i++) {
+                if (separator[nodes[i]] == stamp) {
+                    scratch[--separatorStart] = nodes[i];
+                }
+            }
+            System.arraycopy(scratch, begin, nodes, begin, end - begin);
+            for (int i = separatorStart; i < end; i++) {
+                rank[nodes[i]] = i;
+            }
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = begin;
+            stack[top++] = lowerEnd;
+            stack[top++] = lowerEnd;
+            stack[top++] = upperEnd;
+        }
+        return rank;
+    }
+    private int split(int[] nodes, int begin, int end) {
+        sortAlongLongerAxis(nodes, begin, end);
+        int mid = begin + (end - begin) / 2;
+        int segmentStamp = ++stamp;
+        int upperStamp = ++stamp;
+        for (int i = begin; i < end; i++) {
+            segment[nodes[i]] = segmentStamp;
+            if (i >= mid) {
+                side[nodes[i]] = upperStamp;
+            }
+        }
+        int lowerBoundary = 0;
+        int upperBoundary = 0;
+        for (int i = begin; i < end; i++) {
+            if (crossesSplit(nodes[i], i >= mid, segmentStamp, upperStamp)) {
+                if (i >= mid) {
+                    upperBoundary++;
+                } else {
+                    lowerBoundary++;
+                }
+            }
+        }
+        boolean separateUpper = upperBoundary < lowerBoundary;
+        int separatorStamp = ++stamp;
+        for (int i = separateUpper ? mid : begin, last = separateUpper ? end : mid; i < last; i++) {
+            if (crossesSplit(nodes[i], separateUpper, segmentStamp, upperStamp)) {
+                separator[nodes[i]] = separatorStamp;
+            }
+        }
+        return mid;
+    }
+    private boolean crossesSplit(int v, boolean upper, int segmentStamp, int upperStamp) {
+        for (int k = offset[v]; k < offset[v + 1]; k++) {
+            int w = neighbor[k];
+            if (segment[w] == segmentStamp && (side[w] == upperStamp) != upper) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private void sortAlongLongerAxis(int[] nodes, int begin, int end) {
+        int minLat = Integer.MAX_VALUE;
+        int maxLat = Integer.MIN_VALUE;
+        int minLon = Integer.MAX_VALUE;
+        int maxLon = Integer.MIN_VALUE;
+        for (int i = begin; i < end; i++) {
+            int v = nodes[i];
+            minLat = Math.min(minLat, nodeLatE7[v]);
+            maxLat = Math.max(maxLat, nodeLatE7[v]);
+            minLon = Math.min(minLon, nodeLonE7[v]);
+            maxLon = Math.max(maxLon, nodeLonE7[v]);
+        }
+        boolean byLat = (double) maxLat - minLat >= ((double) maxLon - minLon) * lonScale;
+        long[] keys = new long[end - begin];
+        for (int i = begin; i < end; i++) {
+            int v = nodes[i];
+            keys[i - begin] = ((long) (byLat ? nodeLatE7[v] : nodeLonE7[v]) << 32) | v;
+        }
+        Arrays.sort(keys);
+        for (int i = begin; i < end; i++) {
+            nodes[i] = (int) keys[i - begin];
+        }
+    }
+}
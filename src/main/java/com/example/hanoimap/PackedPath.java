@@ -0,0 +1,65 @@
+package com.example.hanoimap;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+final class PackedPath extends AbstractList<LatLon> implements RandomAccess {
+    private static final double COORD_SCALE = 1e7;
+    private final int[] latE7;
+    private final int[] lonE7;
+    private final int size;
+    private PackedPath(int[] latE7, int[] lonE7, int size) {
+        this.latE7 = latE7;
+        this.lonE7 = lonE7;
+        this.size = size;
+    }
+    @Override
+    public LatLon get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return new LatLon(latE7[index] / COORD_SCALE, lonE7[index] / COORD_SCALE);
+    }
+    @Override
+    public int size() {
+        return size;
+    }
+    int latE7(int index) {
+        return latE7[index];
+    }
+    int lonE7(int index) {
+        return lonE7[index];
+    }
+    PackedPath select(boolean[] keep) {
+        Builder builder = new Builder(size);
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                builder.add(latE7[i], lonE7[i]);
+            }
+        }
+        return builder.build();
+    }
+    static final class Builder {
+        private int[] latE7;
+        private int[] lonE7;
+        private int size;
+        Builder(int capacity) {
+            latE7 = new int[Math.max(4, capacity)];
+            lonE7 = new int[Math.max(4, capacity)];
+        }
+        void add(int lat, int lon) {
+            if (size > 0 && latE7[size - 1] == lat && lonE7[size - 1] == lon) {
+                return;
+            }
+            if (size == latE7.length) {
+                latE7 = Arrays.copyOf(latE7, size * 2);
+                lonE7 = Arrays.copyOf(lonE7, size * 2);
+            }
+            latE7[size] = lat;
+            lonE7[size] = lon;
+            size++;
+        }
+        PackedPath build() {
+            return new PackedPath(latE7, lonE7, size);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.hanoimap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+final class PbfBlobIndex {
+    static final int NODES = 1;
+    static final int DENSE_NODES = 2;
+    static final int WAYS = 4;
+    static final int RELATIONS = 8;
+    private static final int FILE_VERSION = 1;
+    private final List<Entry> entries;
+    PbfBlobIndex(List<Entry> entries) {
+        this.entries = List.copyOf(entries);
+    }
+    int size() {
+        return entries.size();
+    }
+    List<Entry> select(int contents) {
+        List<Entry> selected = new ArrayList<>();
+        for (Entry entry : entries) {
+            if ((entry.contents() & contents) != 0) {
+                selected.add(entry);
+            }
+        }
+        return selected;
+    }
+    List<Entry> selectNodes(BitSet neededBuckets, int bucketShift) {
+        List<Entry> selected = new ArrayList<>();
+        for (Entry entry : select(NODES | DENSE_NODES)) {
+            if (entry.mayContain(neededBuckets, bucketShift)) {
+                selected.add(entry);
+            }
+        }
+        return selected;
+    }
+    long bytes(List<Entry> selected) {
+        long total = 0;
+        for (Entry entry : selected) {
+            total += entry.size();
+        }
+        return total;
+    }
+    void save(File file, File pbf) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_VERSION);
+            out.writeLong(pbf.length());
+            out.writeLong(pbf.lastModified());
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeLong(entry.offset());
+                out.writeInt(entry.size());
+                out.writeByte(entry.contents());
+                out.writeLong(entry.minNodeId());
+                out.writeLong(entry.maxNodeId());
+            }
+        }
+    }
+    static PbfBlobIndex load(File file, File pbf) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION) {
+                throw new IOException("Blob index version mismatch");
+            }
+            if (in.readLong() != pbf.length() || in.readLong() != pbf.lastModified()) {
+                throw new IOException("Blob index belongs to another PBF file");
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Corrupt blob index");
+            }
+            List<Entry> entries = new ArrayList<>(count);
+            long end = 0;
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readLong(), in.readInt(), in.readByte(), in.readLong(), in.readLong());
+                if (entry.offset() < end || entry.size() < 0 || entry.offset() + entry.size() > pbf.length()) {
+                    throw new IOException("Corrupt blob index");
+                }
+                end = entry.offset() + entry.size();
+                entries.add(entry);
+            }
+            return new PbfBlobIndex(entries);
+        }
+    }
+    record Entry(long offset, int size, int contents, long minNodeId, long maxNodeId) {
+        boolean mayContain(BitSet neededBuckets, int bucketShift) {
+            if (minNodeId > maxNodeId) {
+                return false;
+            }
+            if (minNodeId < 0 || (maxNodeId >>> bucketShift) >= Integer.MAX_VALUE) {
+                return true;
+            }
+            int next = neededBuckets.nextSetBit((int) (minNodeId >>> bucketShift));
+            return next >= 0 && next <= (maxNodeId >>> bucketShift);
+        }
+    }
+}
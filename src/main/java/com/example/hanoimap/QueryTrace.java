@@ -0,0 +1,78 @@
+package com.example.hanoimap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+public final class QueryTrace {
+    private final boolean bypassCache;
+    private final boolean captureSearchSpace;
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+    private final Map<String, List<LatLon>> searchSpace = new LinkedHashMap<>();
+    private String cacheStatus;
+    private String engine;
+    private long markNs = System.nanoTime();
+    public QueryTrace(boolean bypassCache, boolean captureSearchSpace) {
+        this.bypassCache = bypassCache;
+        this.captureSearchSpace = captureSearchSpace;
+    }
+    public boolean bypassCache() {
+        return bypassCache;
+    }
+    public boolean capturesSearchSpace() {
+        return captureSearchSpace;
+    }
+    public void restart() {
+        markNs = System.nanoTime();
+    }
+    public void phase(String name) {
+        long now = System.nanoTime();
+        phaseNanos.merge(name, now - markNs, Long::sum);
+        markNs = now;
+    }
+    public void count(String name, long value) {
+        counters.merge(name, value, Long::sum);
+    }
+    public void engine(String name) {
+        engine = name;
+    }
+    public String engine() {
+        return engine;
+    }
+    public void cacheStatus(String status) {
+        cacheStatus = status;
+    }
+    public String cacheStatus() {
+        return cacheStatus;
+    }
+    public void searchSpace(String direction, List<LatLon> settled) {
+        searchSpace.put(direction, settled);
+    }
+    public Map<String, Long> phaseNanos() {
+        return Collections.unmodifiableMap(phaseNanos);
+    }
+    public Map<String, Long> counters() {
+        return Collections.unmodifiableMap(counters);
+    }
+    public Map<String, List<LatLon>> searchSpace() {
+        return Collections.unmodifiableMap(searchSpace);
+    }
+    public String serverTiming() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+            if (out.length() > 0) {
+                out.append(", ");
+            }
+            out.append(entry.getKey());
+            if (entry.getKey().equals("cache") && cacheStatus != null) {
+                out.append(";desc=").append(cacheStatus);
+            }
+            out.append(";dur=").append(String.format(Locale.ROOT, "%.3f", entry.getValue() / 1e6));
+        }
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            out.append(out.length() > 0 ? ", " : "").append(entry.getKey()).append(";desc=").append(entry.getValue());
+        }
+        return out.toString();
+    }
+}
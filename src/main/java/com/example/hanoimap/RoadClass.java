@@ -0,0 +1,44 @@
+package com.example.hanoimap;
+enum RoadClass {
+    MOTORWAY("motorway", 90),
+    TRUNK("trunk", 70),
+    PRIMARY("primary", 50),
+    SECONDARY("secondary", 40),
+    TERTIARY("tertiary", 35),
+    UNCLASSIFIED("unclassified", 30),
+    RESIDENTIAL("residential", 25),
+    SERVICE("service", 15),
+    LIVING_STREET("living_street", 10),
+    MOTORWAY_LINK("motorway_link", 50),
+    TRUNK_LINK("trunk_link", 40),
+    PRIMARY_LINK("primary_link", 35),
+    SECONDARY_LINK("secondary_link", 30),
+    TERTIARY_LINK("tertiary_link", 25);
+    private static final RoadClass[] VALUES = values();
+    private final String tag;
+    private final double speedKmh;
+    RoadClass(String tag, double speedKmh) {
+        this.tag = tag;
+        this.speedKmh = speedKmh;
+    }
+    String tag() {
+        return tag;
+    }
+    double secondsPerMeter() {
+        return 3.6 / speedKmh;
+    }
+    static RoadClass byOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+    static RoadClass fromTag(String highway) {
+        if (highway == null) {
+            return null;
+        }
+        for (RoadClass c : VALUES) {
+            if (c.tag.equals(highway)) {
+                return c;
+            }
+        }
+        return null;
+    }
+}
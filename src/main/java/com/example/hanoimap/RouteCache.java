@@ -0,0 +1,208 @@
+package com.example.hanoimap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+final class RouteCache {
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final int ENTRY_OVERHEAD_POINTS = 8;
+    private final long capacityPoints;
+    private final long protectedCapacityPoints;
+    private final LinkedHashMap<Key, List<LatLon>> probation = new LinkedHashMap<>(256, 0.75f, true);
+    private final LinkedHashMap<Key, List<LatLon>> protectedSegment = new LinkedHashMap<>(256, 0.75f, true);
+    private final ConcurrentHashMap<Key, CompletableFuture<List<LatLon>>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long probationPoints;
+    private long protectedPoints;
+    private long generation;
+    RouteCache(long capacityPoints) {
+        this.capacityPoints = capacityPoints;
+        this.protectedCapacityPoints = capacityPoints * 4 / 5;
+    }
+    Lookup get(Key key, Supplier<List<LatLon>> loader) {
+        long startGeneration;
+        synchronized (this) {
+            List<LatLon> cached = lookup(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return new Lookup(cached, Outcome.HIT);
+            }
+            startGeneration = generation;
+        }
+        CompletableFuture<List<LatLon>> mine = new CompletableFuture<>();
+        CompletableFuture<List<LatLon>> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            try {
+                return new Lookup(running.join(), Outcome.COALESCED);
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        misses.incrementAndGet();
+        try {
+            List<LatLon> loaded = loader.get();
+            List<LatLon> result = loaded instanceof PackedPath ? loaded : List.copyOf(loaded);
+            synchronized (this) {
+                if (generation == startGeneration) {
+                    insert(key, result);
+                }
+            }
+            mine.complete(result);
+            return new Lookup(result, Outcome.MISS);
+        } catch (Throwable e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+    synchronized void clear() {
+        probation.clear();
+        protectedSegment.clear();
+        probationPoints = 0;
+        protectedPoints = 0;
+        generation++;
+    }
+    synchronized Stats stats() {
+        long h = hits.get();
+        long m = misses.get();
+        return new Stats(probation.size() + protectedSegment.size(), probationPoints + protectedPoints, capacityPoints,
+                h, m, coalesced.get(), evictions.get(), h + m == 0 ? 0.0 : (double) h / (h + m));
+    }
+    private List<LatLon> lookup(Key key) {
+        List<LatLon> value = protectedSegment.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = probation.remove(key);
+        if (value == null) {
+            return null;
+        }
+        probationPoints -= weight(value);
+        protectedSegment.put(key, value);
+        protectedPoints += weight(value);
+        while (protectedPoints > protectedCapacityPoints) {
+            Iterator<Map.Entry<Key, List<LatLon>>> it = protectedSegment.entrySet().iterator();
+            Map.Entry<Key, List<LatLon>> eldest = it.next();
+            it.remove();
+            protectedPoints -= weight(eldest.getValue());
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationPoints += weight(eldest.getValue());
+        }
+        evict();
+        return value;
+    }
+    private void insert(Key key, List<LatLon> value) {
+        long w = weight(value);
+        if (w > capacityPoints - protectedCapacityPoints || protectedSegment.containsKey(key)) {
+            return;
+        }
+        List<LatLon> previous = probation.put(key, value);
+        if (previous != null) {
+            probationPoints -= weight(previous);
+        }
+        probationPoints += w;
+        evict();
+    }
+    private void evict() {
+        Iterator<Map.Entry<Key, List<LatLon>>> it = probation.entrySet().iterator();
+        while (probationPoints + protectedPoints > capacityPoints && it.hasNext()) {
+            probationPoints -= weight(it.next().getValue());
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+    private static long weight(List<LatLon> value) {
+        return value.size() + ENTRY_OVERHEAD_POINTS;
+    }
+    synchronized void save(File file, long graphStamp) throws IOException {
+        List<Map.Entry<Key, List<LatLon>>> entries = new ArrayList<>(probation.entrySet());
+        entries.addAll(protectedSegment.entrySet());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 20))) {
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(graphStamp);
+            out.writeInt(entries.size());
+            for (Map.Entry<Key, List<LatLon>> entry : entries) {
+                Key key = entry.getKey();
+                out.writeUTF(key.engine());
+                out.writeLong(key.from());
+                out.writeLong(key.to());
+                out.writeUTF(key.metric());
+                out.writeInt(entry.getValue().size());
+                for (LatLon p : entry.getValue()) {
+                    out.writeDouble(p.lat());
+                    out.writeDouble(p.lon());
+                }
+            }
+        }
+    }
+    void load(File file, long graphStamp) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 20))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Route cache snapshot version mismatch");
+            }
+            if (in.readLong() != graphStamp) {
+                throw new IOException("Route cache snapshot belongs to another graph");
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Corrupt route cache snapshot");
+            }
+            List<Key> keys = new ArrayList<>(count);
+            List<List<LatLon>> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Key key = new Key(in.readUTF(), in.readLong(), in.readLong(), in.readUTF());
+                int n = in.readInt();
+                if (n < 0) {
+                    throw new IOException("Corrupt route cache snapshot");
+                }
+                List<LatLon> points = new ArrayList<>(n);
+                for (int j = 0; j < n; j++) {
+                    points.add(new LatLon(in.readDouble(), in.readDouble()));
+                }
+                keys.add(key);
+                values.add(List.copyOf(points));
+            }
+            synchronized (this) {
+                for (int i = 0; i < count; i++) {
+                    insert(keys.get(i), values.get(i));
+                }
+            }
+        }
+    }
+    record Key(String engine, long from, long to, String metric) {
+    }
+    enum Outcome {
+        HIT,
+        MISS,
+        COALESCED
+    }
+    record Lookup(List<LatLon> path, Outcome outcome) {
+    }
+    record Stats(int entries, long points, long capacityPoints, long hits, long misses, long coalesced, long evictions, double hitRate) {
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.hanoimap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+final class RouteGeometry {
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+    private static final double TILE_METERS_PER_PIXEL_AT_ZOOM_0 = 156543.03392;
+    private static final int FLEXIBLE_POLYLINE_VERSION = 1;
+    private static final byte BINARY_VERSION = 1;
+    private static final char[] FLEXIBLE_POLYLINE_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private RouteGeometry() {
+    }
+    static double lengthMeters(List<LatLon> points) {
+        double total = 0.0;
+        for (int i = 1; i < points.size(); i++) {
+            LatLon a = points.get(i - 1);
+            LatLon b = points.get(i);
+            double dLat = Math.toRadians(b.lat() - a.lat());
+            double dLon = Math.toRadians(b.lon() - a.lon());
+            double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                    + Math.cos(Math.toRadians(a.lat())) * Math.cos(Math.toRadians(b.lat())) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+            total += 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(h)));
+        }
+        return total;
+    }
+    static double toleranceForZoom(int zoom, double lat) {
+        return 0.5 * TILE_METERS_PER_PIXEL_AT_ZOOM_0 * Math.cos(Math.toRadians(lat)) / (1L << zoom);
+    }
+    static List<LatLon> simplify(List<LatLon> points, double toleranceMeters) {
+        int n = points.size();
+        if (n < 3 || !(toleranceMeters > 0.0)) {
+            return points;
+        }
+        double metersPerDegLat = Math.toRadians(1.0) * EARTH_RADIUS_METERS;
+        double metersPerDegLon = metersPerDegLat * Math.cos(Math.toRadians(points.get(0).lat()));
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = points.get(i).lon() * metersPerDegLon;
+            y[i] = points.get(i).lat() * metersPerDegLat;
+        }
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        double toleranceSquared = toleranceMeters * toleranceMeters;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            int farthest = -1;
+            double farthestSquared = toleranceSquared;
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistanceSquared(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (d > farthestSquared) {
+                    farthestSquared = d;
+                    farthest = i;
+                }
+            }
+            if (farthest < 0) {
+                continue;
+            }
+            keep[farthest] = true;
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = first;
+            stack[top++] = farthest;
+            stack[top++] = farthest;
+            stack[top++] = last;
+        }
+        if (points instanceof PackedPath packed) {
+            return packed.select(keep);
+        }
+        List<LatLon> kept = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                kept.add(points.get(i));
+            }
+        }
+        return kept;
+    }
+    private static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0.0 ? 0.0 : Math.max(0.0, Math.min(1.0, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        double ex = ax + t * dx - px;
+        double ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+    static String encodePolyline(List<LatLon> points, int precision) {
+        double factor = Math.pow(10, precision);
+        StringBuilder out = new StringBuilder(points.size() * 8);
+        long prevLat = 0;
+        long prevLon = 0;
+        for (LatLon p : points) {
+            long lat = Math.round(p.lat() * factor);
+            long lon = Math.round(p.lon() * factor);
+            appendPolylineValue(out, lat - prevLat);
+            appendPolylineValue(out, lon - prevLon);
+            prevLat = lat;
+            prevLon = lon;
+        }
+        return out.toString();
+    }
+    private static void appendPolylineValue(StringBuilder out, long delta) {
+        long value = delta < 0 ? ~(delta << 1) : delta << 1;
+        while (value >= 0x20) {
+            out.append((char) ((0x20 | (value & 0x1f)) + 63));
+            value >>>= 5;
+        }
+        out.append((char) (value + 63));
+    }
+    static byte[] encodeBinary(List<LatLon> points, double distanceMeters) {
+        byte[] out = new byte[13 + points.size() * 8];
+        int pos = 0;
+        out[pos++] = BINARY_VERSION;
+        long bits = Double.doubleToLongBits(distanceMeters);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out[pos++] = (byte) (bits >>> shift);
+        }
+        pos = putVarint(out, pos, points.size());
+        long prevLat = 0;
+        long prevLon = 0;
+        PackedPath packed = points instanceof PackedPath p ? p : null;
+        for (int i = 0; i < points.size(); i++) {
+            long lat = packed != null ? packed.latE7(i) : Math.round(points.get(i).lat() * 1e7);
+            long lon = packed != null ? packed.lonE7(i) : Math.round(points.get(i).lon() * 1e7);
+            if (pos + 20 > out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            pos = putVarint(out, pos, (lat - prevLat) << 1 ^ (lat - prevLat) >> 63);
+            pos = putVarint(out, pos, (lon - prevLon) << 1 ^ (lon - prevLon) >> 63);
+            prevLat = lat;
+            prevLon = lon;
+        }
+        return Arrays.copyOf(out, pos);
+    }
+    private static int putVarint(byte[] out, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+    static String encodeFlexiblePolyline(List<LatLon> points, int precision) {
+        double factor = Math.pow(10, precision);
+        StringBuilder out = new StringBuilder(points.size() * 8 + 4);
+        appendFlexibleUnsigned(out, FLEXIBLE_POLYLINE_VERSION);
+        appendFlexibleUnsigned(out, precision);
+        long prevLat = 0;
+        long prevLon = 0;
+        for (LatLon p : points) {
+            long lat = Math.round(Math.abs(p.lat() * factor)) * (long) Math.signum(p.lat());
+            long lon = Math.round(Math.abs(p.lon() * factor)) * (long) Math.signum(p.lon());
+            appendFlexibleSigned(out, lat - prevLat);
+            appendFlexibleSigned(out, lon - prevLon);
+            prevLat = lat;
+            prevLon = lon;
+        }
+        return out.toString();
+    }
+    private static void appendFlexibleSigned(StringBuilder out, long value) {
+        appendFlexibleUnsigned(out, value < 0 ? ~(value << 1) : value << 1);
+    }
+    private static void appendFlexibleUnsigned(StringBuilder out, long value) {
+        while (value > 0x1f) {
+            out.append(FLEXIBLE_POLYLINE_ALPHABET[(int) ((value & 0x1f) | 0x20)]);
+            value >>>= 5;
+        }
+        out.append(FLEXIBLE_POLYLINE_ALPHABET[(int) value]);
+    }
+}
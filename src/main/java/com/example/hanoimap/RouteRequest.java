@@ -0,0 +1,3 @@
+package com.example.hanoimap;
+public record RouteRequest(double fromLat, double fromLon, double toLat, double toLon) {
+}
@@ -1,43 +1,140 @@
 package com.example.hanoimap;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import spark.Request;
 import spark.Response;
+import spark.Route;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import static spark.Spark.before;
 import static spark.Spark.get;
+import static spark.Spark.halt;
 import static spark.Spark.post;
 public class RoutingController {
+    private static final int MAX_MATRIX_POINTS = 500;
+    private static final int MAX_ISOCHRONE_LIMITS = 8;
+    private static final int MAX_ZOOM = 22;
+    private static final int MAX_POLYLINE_PRECISION = 10;
+    private static final int MAX_BATCH_ROUTES = 10000;
+    private static final int RESERVED_HTTP_THREADS = 16;
+    private static final List<String> GEOMETRY_FORMATS = List.of("json", "polyline", "flexpolyline", "summary", "binary");
     private final RoutingService routingService;
     private final BenchmarkManager benchmarkManager;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    public RoutingController(RoutingService routingService, BenchmarkManager benchmarkManager) {
+    private final JsonFactory jsonFactory = objectMapper.getFactory();
+    private final AdmissionControl admission;
+    private final ServerMetrics serverMetrics;
+    public RoutingController(RoutingService routingService, BenchmarkManager benchmarkManager, int httpThreads) {
         this.routingService = routingService;
         this.benchmarkManager = benchmarkManager;
+        this.serverMetrics = new ServerMetrics(req -> routingService.engineName(req.queryParams("engine")));
+        int budget = httpThreads - RESERVED_HTTP_THREADS;
+        this.admission = new AdmissionControl(budget);
+        int cpus = Runtime.getRuntime().availableProcessors();
+        admission.define("control", 2, 2);
+        admission.define("batch", 2, 4);
+        admission.define("tile", 16, 32);
+        int shared = Math.max(0, budget - admission.capacity());
+        int heavyShare = shared / 4;
+        int heavyConcurrency = Math.max(1, Math.min(cpus / 2, heavyShare / 2));
+        admission.define("heavy", heavyConcurrency, heavyShare - heavyConcurrency);
+        int routeShare = shared - heavyShare;
+        int routeConcurrency = Math.max(1, Math.min(cpus, routeShare / 2));
+        admission.define("route", routeConcurrency, routeShare - routeConcurrency);
+        admission.validate();
     }
     public void registerRoutes() {
         get("/api/health", (req, res) -> {
             res.type("application/json");
             return "{\"status\":\"ok\"}";
         });
-        get("/api/route", this::handleRoute);
-        post("/api/tsp", this::handleTsp);
-        post("/api/benchmark/start", this::handleBenchmarkStart);
+        before("/api/*", this::requireEngineReady);
+        get("/metrics", this::handlePrometheus);
+        get("/api/admission", this::handleAdmissionStats);
+        get("/api/shadow", this::handleShadowReport);
+        get("/api/route", limited("route", "route", this::handleRoute));
+        get("/api/route/cache", this::handleRouteCacheStats);
+        post("/api/routes/batch", limited("routes_batch", "batch", this::handleRoutesBatch));
+        get("/api/isochrone", limited("isochrone", "route", this::handleIsochrone));
+        post("/api/tsp", limited("tsp", "heavy", this::handleTsp));
+        post("/api/matrix", limited("matrix", "heavy", this::handleMatrix));
+        get("/api/metrics", this::handleMetricsGet);
+        post("/api/metrics", limited("metrics_define", "control", this::handleMetricsDefine));
+        post("/api/benchmark/start", limited("benchmark_start", "control", this::handleBenchmarkStart));
         get("/api/benchmark/status", this::handleBenchmarkStatus);
-        get("/api/benchmark/download", this::handleBenchmarkDownload);
+        get("/api/benchmark/download", limited("benchmark_download", "control", this::handleBenchmarkDownload));
         get("/api/engine", this::handleEngineGet);
-        post("/api/engine/set", this::handleEngineSet);
-        get("/tiles/:source/:z/:x/:y.png", this::handleTileProxy);
+        post("/api/engine/set", limited("engine_set", "control", this::handleEngineSet));
+        get("/tiles/:source/:z/:x/:y.png", limited("tile", "tile", this::handleTileProxy));
+    }
+    private Route limited(String endpoint, String admissionClass, Route route) {
+        return serverMetrics.timed(endpoint, admission.limit(admissionClass, route));
+    }
+    private void requireEngineReady(Request req, Response res) throws Exception {
+        String engine = req.queryParams("engine");
+        if (engine == null || engine.isBlank() || req.pathInfo().startsWith("/api/engine")) {
+            return;
+        }
+        res.type("application/json");
+        try {
+            if (!routingService.engineReady(engine)) {
+                String failure = routingService.engineFailure(engine);
+                if (failure != null) {
+                    halt(503, objectMapper.writeValueAsString(Map.of("error", failure)));
+                }
+                res.header("Retry-After", "5");
+                halt(503, "{\"error\":\"Engine " + EngineRegistry.normalize(engine) + " is still loading\"}");
+            }
+        } catch (IllegalArgumentException e) {
+            halt(400, "{\"error\":\"Unknown engine\"}");
+        }
+    }
+    private String handlePrometheus(Request req, Response res) {
+        res.type("text/plain; version=0.0.4; charset=utf-8");
+        return serverMetrics.render(routingService.routeCacheStats(), admission.stats(), routingService.shadowStats());
+    }
+    private String handleShadowReport(Request req, Response res) {
+        try {
+            ShadowTraffic.Report report = routingService.shadowReport();
+            res.type("application/json");
+            if (report == null) {
+                return "{\"enabled\":false}";
+            }
+            return objectMapper.writeValueAsString(report);
+        } catch (Exception e) {
+            res.status(500);
+            res.type("application/json");
+            return "{\"error\":\"Internal server error\"}";
+        }
+    }
+    private String handleAdmissionStats(Request req, Response res) {
+        try {
+            res.type("application/json");
+            return objectMapper.writeValueAsString(admission.stats());
+        } catch (Exception e) {
+            res.status(500);
+            res.type("application/json");
+            return "{\"error\":\"Internal server error\"}";
+        }
     }
     private String handleEngineGet(Request req, Response res) {
         try {
             String name = routingService.getEngineName();
             Map<String, Object> out = new HashMap<>();
             out.put("engine", name);
+            out.put("engines", routingService.engineStates());
             res.type("application/json");
             return objectMapper.writeValueAsString(out);
         } catch (Exception e) {
@@ -64,8 +161,14 @@ public class RoutingController {
             Map<String, Object> out = new HashMap<>();
             out.put("engine", routingService.getEngineName());
             out.put("changed", changed);
+            out.put("pending", !routingService.getEngineName().equals(EngineRegistry.normalize(e)));
+            out.put("engines", routingService.engineStates());
             res.type("application/json");
             return objectMapper.writeValueAsString(out);
+        } catch (IllegalArgumentException e) {
+            res.status(400);
+            res.type("application/json");
+            return "{\"error\":\"Unknown engine\"}";
         } catch (Exception e) {
             res.status(500);
             res.type("application/json");
@@ -140,15 +243,24 @@ public class RoutingController {
             return "Error fetching tile: " + e.getMessage();
         }
     }
-    private String handleRoute(Request req, Response res) {
+    private Object handleRoute(Request req, Response res) {
         try {
+            GeometryOptions options = geometryOptions(req);
+            String debugParam = req.queryParams("debug") == null ? "false" : req.queryParams("debug").toLowerCase();
+            if (!debugParam.equals("false") && !debugParam.equals("true") && !debugParam.equals("searchspace")) {
+                throw new IllegalArgumentException("Unknown debug mode: " + debugParam);
+            }
+            boolean debug = !debugParam.equals("false");
             double fromLat = Double.parseDouble(req.queryParams("fromLat"));
             double fromLon = Double.parseDouble(req.queryParams("fromLon"));
             double toLat = Double.parseDouble(req.queryParams("toLat"));
             double toLon = Double.parseDouble(req.queryParams("toLon"));
+            QueryTrace trace = new QueryTrace(debug, debugParam.equals("searchspace"));
             long startNs = System.nanoTime();
-            List<LatLon> path = routingService.route(fromLat, fromLon, toLat, toLon);
-            long processingMs = (System.nanoTime() - startNs) / 1_000_000L;
+            List<LatLon> path = routingService.route(fromLat, fromLon, toLat, toLon, req.queryParams("metric"), req.queryParams("engine"), trace);
+            long processingNs = System.nanoTime() - startNs;
+            long processingMs = processingNs / 1_000_000L;
+            res.header("Server-Timing", serverTiming(trace, processingNs));
             if (path == null || path.isEmpty()) {
                 res.status(404);
                 res.type("application/json");
@@ -157,11 +269,7 @@ public class RoutingController {
                 error.put("processingMs", processingMs);
                 return objectMapper.writeValueAsString(error);
             }
-            Map<String, Object> result = new HashMap<>();
-            result.put("points", path);
-            result.put("processingMs", processingMs);
-            res.type("application/json");
-            return objectMapper.writeValueAsString(result);
+            return writeGeometry(res, path, options, processingMs, debug ? trace : null);
         } catch (NumberFormatException e) {
             res.status(400);
             res.type("application/json");
@@ -172,6 +280,16 @@ public class RoutingController {
             } catch (Exception ex) {
                 return "{\"error\":\"Invalid coordinates\"}";
             }
+        } catch (IllegalArgumentException e) {
+            res.status(400);
+            res.type("application/json");
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            try {
+                return objectMapper.writeValueAsString(error);
+            } catch (Exception ex) {
+                return "{\"error\":\"Bad request\"}";
+            }
         } catch (Exception e) {
             e.printStackTrace();
             res.status(500);
@@ -185,8 +303,400 @@ public class RoutingController {
             }
         }
     }
-    private String handleTsp(Request req, Response res) {
+    private String handleRouteCacheStats(Request req, Response res) {
+        try {
+            RouteCache.Stats stats = routingService.routeCacheStats();
+            Map<String, Object> out = new HashMap<>();
+            out.put("enabled", stats != null);
+            if (stats != null) {
+                out.put("entries", stats.entries());
+                out.put("points", stats.points());
+                out.put("capacityPoints", stats.capacityPoints());
+                out.put("hits", stats.hits());
+                out.put("misses", stats.misses());
+                out.put("coalesced", stats.coalesced());
+                out.put("evictions", stats.evictions());
+                out.put("hitRate", stats.hitRate());
+            }
+            res.type("application/json");
+            return objectMapper.writeValueAsString(out);
+        } catch (Exception e) {
+            res.status(500);
+            res.type("application/json");
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            try {
+                return objectMapper.writeValueAsString(error);
+            } catch (Exception ex) {
+                return "{\"error\":\"Internal server error\"}";
+            }
+        }
+    }
+    private Object handleRoutesBatch(Request req, Response res) {
+        try {
+            GeometryOptions options = geometryOptions(req);
+            if (options.format().equals("binary")) {
+                throw new IllegalArgumentException("Binary format is not supported for batches");
+            }
+            String order = req.queryParams("order") == null ? "request" : req.queryParams("order").toLowerCase();
+            if (!order.equals("request") && !order.equals("completion")) {
+                throw new IllegalArgumentException("Unknown order: " + order);
+            }
+            List<RouteRequest> requests;
+            InputStream body = req.raw().getInputStream();
+            String encoding = req.headers("Content-Encoding");
+            if (encoding != null && encoding.equalsIgnoreCase("gzip")) {
+                body = new GZIPInputStream(body);
+            }
+            try (InputStream in = body) {
+                requests = objectMapper.readValue(in, new TypeReference<List<RouteRequest>>() {
+                });
+            }
+            if (requests == null || requests.isEmpty()) {
+                throw new IllegalArgumentException("No routes given");
+            }
+            if (requests.size() > MAX_BATCH_ROUTES) {
+                throw new IllegalArgumentException("Too many routes (max " + MAX_BATCH_ROUTES + ")");
+            }
+            res.type("application/x-ndjson");
+            JsonGenerator g = jsonFactory.createGenerator(res.raw().getOutputStream());
+            g.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            g.setRootValueSeparator(null);
+            AtomicBoolean lineOpen = new AtomicBoolean();
+            try {
+                routingService.routeBatch(requests, req.queryParams("metric"), req.queryParams("engine"), order.equals("request"), (index, path, error) -> {
+                    lineOpen.set(true);
+                    g.writeStartObject();
+                    g.writeNumberField("index", index);
+                    if (error != null) {
+                        g.writeStringField("error", error.getMessage());
+                    } else if (path == null || path.isEmpty()) {
+                        g.writeStringField("error", "No route found");
+                    } else {
+                        List<LatLon> points = options.zoom() < 0 ? path
+                                : RouteGeometry.simplify(path, RouteGeometry.toleranceForZoom(options.zoom(), path.get(0).lat()));
+                        writeGeometryFields(g, points, RouteGeometry.lengthMeters(path), options);
+                    }
+                    g.writeEndObject();
+                    g.writeRaw('\n');
+                    g.flush();
+                    lineOpen.set(false);
+                });
+                g.close();
+            } catch (IOException | RuntimeException e) {
+                if (!res.raw().isCommitted()) {
+                    res.raw().resetBuffer();
+                    throw e;
+                }
+                e.printStackTrace();
+                if (lineOpen.get()) {
+                    abortResponse(res, e);
+                    return "";
+                }
+                try {
+                    g.writeStartObject();
+                    g.writeNumberField("index", -1);
+                    g.writeStringField("error", "Batch routing error: " + e.getMessage());
+                    g.writeEndObject();
+                    g.writeRaw('\n');
+                    g.close();
+                } catch (IOException ex) {
+                    abortResponse(res, ex);
+                }
+            }
+            return "";
+        } catch (JsonProcessingException e) {
+            res.status(400);
+            res.type("application/json");
+            return "{\"error\":\"Invalid batch body\"}";
+        } catch (IllegalArgumentException e) {
+            res.status(400);
+            res.type("application/json");
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            try {
+                return objectMapper.writeValueAsString(error);
+            } catch (Exception ex) {
+                return "{\"error\":\"Bad request\"}";
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            res.status(500);
+            res.type("application/json");
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Batch routing error: " + e.getMessage());
+            try {
+                return objectMapper.writeValueAsString(error);
+            } catch (Exception ex) {
+                return "{\"error\":\"Internal server error\"}";
+            }
+        }
+    }
+    private static GeometryOptions geometryOptions(Request req) {
+        String format = req.queryParams("format") == null ? "json" : req.queryParams("format").toLowerCase();
+        if (!GEOMETRY_FORMATS.contains(format)) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        int precision = intParam(req, "precision", 5, 0, MAX_POLYLINE_PRECISION);
+        int zoom = req.queryParams("zoom") == null ? -1 : intParam(req, "zoom", MAX_ZOOM, 0, MAX_ZOOM);
+        return new GeometryOptions(format, precision, zoom);
+    }
+    private static String serverTiming(QueryTrace trace, long processingNs) {
+        String phases = trace.serverTiming();
+        return (phases.isEmpty() ? "" : phases + ", ") + String.format(Locale.ROOT, "total;dur=%.3f", processingNs / 1e6);
+    }
+    private void writeDebug(JsonGenerator g, QueryTrace trace) throws IOException {
+        g.writeObjectFieldStart("debug");
+        g.writeStringField("engine", trace.engine());
+        g.writeStringField("cache", trace.cacheStatus() == null ? "bypass" : trace.cacheStatus());
+        g.writeObjectFieldStart("timingsMs");
+        for (Map.Entry<String, Long> phase : trace.phaseNanos().entrySet()) {
+            g.writeNumberField(phase.getKey(), phase.getValue() / 1e6);
+        }
+        g.writeEndObject();
+        g.writeObjectFieldStart("counters");
+        for (Map.Entry<String, Long> counter : trace.counters().entrySet()) {
+            g.writeNumberField(counter.getKey(), counter.getValue());
+        }
+        g.writeEndObject();
+        if (trace.capturesSearchSpace()) {
+            g.writeObjectFieldStart("searchSpace");
+            g.writeStringField("type", "FeatureCollection");
+            g.writeArrayFieldStart("features");
+            for (Map.Entry<String, List<LatLon>> side : trace.searchSpace().entrySet()) {
+                List<LatLon> settled = side.getValue();
+                g.writeStartObject();
+                g.writeStringField("type", "Feature");
+                g.writeObjectFieldStart("properties");
+                g.writeStringField("direction", side.getKey());
+                g.writeNumberField("settled", settled.size());
+                g.writeEndObject();
+                g.writeObjectFieldStart("geometry");
+                g.writeStringField("type", "MultiPoint");
+                g.writeArrayFieldStart("coordinates");
+                for (LatLon p : settled) {
+                    g.writeStartArray();
+                    g.writeNumber(p.lon());
+                    g.writeNumber(p.lat());
+                    g.writeEndArray();
+                }
+                g.writeEndArray();
+                g.writeEndObject();
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+            g.writeEndObject();
+        }
+        g.writeEndObject();
+    }
+    private Object writeGeometry(Response res, List<LatLon> path, GeometryOptions options, long processingMs, QueryTrace debug) throws IOException {
+        List<LatLon> points = options.zoom() < 0 ? path
+                : RouteGeometry.simplify(path, RouteGeometry.toleranceForZoom(options.zoom(), path.get(0).lat()));
+        double distanceMeters = RouteGeometry.lengthMeters(path);
+        if (options.format().equals("binary")) {
+            res.type("application/octet-stream");
+            res.header("X-Processing-Ms", Long.toString(processingMs));
+            try {
+                OutputStream out = res.raw().getOutputStream();
+                out.write(RouteGeometry.encodeBinary(points, distanceMeters));
+                out.flush();
+            } catch (IOException | RuntimeException e) {
+                if (abortIfCommitted(res, e)) {
+                    return "";
+                }
+                throw e;
+            }
+            return "";
+        }
+        if (debug != null) {
+            debug.restart();
+        }
+        return streamJson(res, g -> {
+            g.writeStartObject();
+            writeGeometryFields(g, points, distanceMeters, options);
+            g.writeNumberField("processingMs", processingMs);
+            if (debug != null) {
+                debug.phase("serialize");
+                writeDebug(g, debug);
+            }
+            g.writeEndObject();
+        });
+    }
+    private static void writeGeometryFields(JsonGenerator g, List<LatLon> points, double distanceMeters, GeometryOptions options) throws IOException {
+        g.writeNumberField("distanceMeters", distanceMeters);
+        g.writeNumberField("pointCount", points.size());
+        switch (options.format()) {
+            case "json" -> {
+                g.writeFieldName("points");
+                writePoints(g, points);
+            }
+            case "polyline" -> {
+                g.writeStringField("polyline", RouteGeometry.encodePolyline(points, options.precision()));
+                g.writeNumberField("precision", options.precision());
+            }
+            case "flexpolyline" -> {
+                g.writeStringField("polyline", RouteGeometry.encodeFlexiblePolyline(points, options.precision()));
+                g.writeNumberField("precision", options.precision());
+            }
+            default -> {
+            }
+        }
+    }
+    private Object streamJson(Response res, JsonBody body) throws IOException {
+        res.type("application/json");
+        JsonGenerator g = jsonFactory.createGenerator(res.raw().getOutputStream());
+        g.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            body.write(g);
+            g.close();
+        } catch (IOException | RuntimeException e) {
+            if (abortIfCommitted(res, e)) {
+                return "";
+            }
+            throw e;
+        }
+        return "";
+    }
+    private static boolean abortIfCommitted(Response res, Exception failure) {
+        if (!res.raw().isCommitted()) {
+            res.raw().resetBuffer();
+            return false;
+        }
+        failure.printStackTrace();
+        abortResponse(res, failure);
+        return true;
+    }
+    private static void abortResponse(Response res, Exception failure) {
+        System.out.println("Aborting partially written response: " + failure);
+        if (res.raw() instanceof org.eclipse.jetty.server.Response jetty) {
+            jetty.getHttpChannel().abort(failure);
+        }
+    }
+    private static void writePoints(JsonGenerator g, List<LatLon> points) throws IOException {
+        g.writeStartArray();
+        if (points instanceof PackedPath packed) {
+            for (int i = 0; i < packed.size(); i++) {
+                g.writeStartObject();
+                g.writeNumberField("lat", packed.latE7(i) / 1e7);
+                g.writeNumberField("lon", packed.lonE7(i) / 1e7);
+                g.writeEndObject();
+            }
+        } else {
+            for (LatLon p : points) {
+                g.writeStartObject();
+                g.writeNumberField("lat", p.lat());
+                g.writeNumberField("lon", p.lon());
+                g.writeEndObject();
+            }
+        }
+        g.writeEndArray();
+    }
+    private static int intParam(Request req, String name, int defaultValue, int min, int max) {
+        String value = req.queryParams(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+        if (parsed < min || parsed > max) {
+            throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+        }
+        return parsed;
+    }
+    private Object handleIsochrone(Request req, Response res) {
+        try {
+            double lat = Double.parseDouble(req.queryParams("lat"));
+            double lon = Double.parseDouble(req.queryParams("lon"));
+            String limitParam = req.queryParams("limit");
+            if (limitParam == null || limitParam.isBlank()) {
+                res.status(400);
+                res.type("application/json");
+                return "{\"error\":\"Missing limit\"}";
+            }
+            String[] parts = limitParam.split(",");
+            if (parts.length > MAX_ISOCHRONE_LIMITS) {
+                res.status(400);
+                res.type("application/json");
+                Map<String, Object> error = new HashMap<>();
+                error.put("error", "Too many limits (max " + MAX_ISOCHRONE_LIMITS + ")");
+                return objectMapper.writeValueAsString(error);
+            }
+            double[] limits = new double[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                limits[i] = Double.parseDouble(parts[i].trim());
+            }
+            long startNs = System.nanoTime();
+            List<Isochrone> isochrones = routingService.isochrones(lat, lon, limits, req.queryParams("metric"), req.queryParams("engine"));
+            long processingMs = (System.nanoTime() - startNs) / 1_000_000L;
+            if (isochrones.isEmpty()) {
+                res.status(404);
+                res.type("application/json");
+                Map<String, Object> error = new HashMap<>();
+                error.put("error", "No road near the start point");
+                error.put("processingMs", processingMs);
+                return objectMapper.writeValueAsString(error);
+            }
+            return streamJson(res, g -> {
+                g.writeStartObject();
+                g.writeArrayFieldStart("isochrones");
+                for (Isochrone isochrone : isochrones) {
+                    g.writeStartObject();
+                    g.writeNumberField("limit", isochrone.limit());
+                    g.writeArrayFieldStart("polygons");
+                    for (List<List<LatLon>> polygon : isochrone.polygons()) {
+                        g.writeStartArray();
+                        for (List<LatLon> ring : polygon) {
+                            writePoints(g, ring);
+                        }
+                        g.writeEndArray();
+                    }
+                    g.writeEndArray();
+                    g.writeEndObject();
+                }
+                g.writeEndArray();
+                g.writeNumberField("processingMs", processingMs);
+                g.writeEndObject();
+            });
+        } catch (NumberFormatException e) {
+            res.status(400);
+            res.type("application/json");
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Invalid number: " + e.getMessage());
+            try {
+                return objectMapper.writeValueAsString(error);
+            } catch (Exception ex) {
+                return "{\"error\":\"Invalid number\"}";
+            }
+        } catch (IllegalArgumentException e) {
+            res.status(400);
+            res.type("application/json");
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            try {
+                return objectMapper.writeValueAsString(error);
+            } catch (Exception ex) {
+                return "{\"error\":\"Bad request\"}";
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            res.status(500);
+            res.type("application/json");
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Isochrone error: " + e.getMessage());
+            try {
+                return objectMapper.writeValueAsString(error);
+            } catch (Exception ex) {
+                return "{\"error\":\"Internal server error\"}";
+            }
+        }
+    }
+    private Object handleTsp(Request req, Response res) {
         try {
+            GeometryOptions options = geometryOptions(req);
             List<LatLon> points = objectMapper.readValue(req.body(), new TypeReference<List<LatLon>>() {
             });
             if (points == null || points.isEmpty()) {
@@ -204,7 +714,7 @@ public class RoutingController {
                 return objectMapper.writeValueAsString(error);
             }
             long startNs = System.nanoTime();
-            List<LatLon> path = routingService.tsp(points);
+            List<LatLon> path = routingService.tsp(points, req.queryParams("engine"));
             long processingMs = (System.nanoTime() - startNs) / 1_000_000L;
             if (path == null || path.isEmpty()) {
                 res.status(404);
@@ -214,11 +724,17 @@ public class RoutingController {
                 error.put("processingMs", processingMs);
                 return objectMapper.writeValueAsString(error);
             }
-            Map<String, Object> result = new HashMap<>();
-            result.put("points", path);
-            result.put("processingMs", processingMs);
+            return writeGeometry(res, path, options, processingMs, null);
+        } catch (IllegalArgumentException e) {
+            res.status(400);
             res.type("application/json");
-            return objectMapper.writeValueAsString(result);
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            try {
+                return objectMapper.writeValueAsString(error);
+            } catch (Exception ex) {
+                return "{\"error\":\"Bad request\"}";
+            }
         } catch (Exception e) {
             e.printStackTrace();
             res.status(500);
@@ -232,6 +748,116 @@ public class RoutingController {
             }
         }
     }
+    private Object handleMatrix(Request req, Response res) {
+        try {
+            Map<String, List<LatLon>> body = objectMapper.readValue(req.body(), new TypeReference<Map<String, List<LatLon>>>() {
+            });
+            List<LatLon> sources = body.get("sources");
+            List<LatLon> targets = body.getOrDefault("targets", sources);
+            if (sources == null || sources.isEmpty() || targets == null || targets.isEmpty()) {
+                res.status(400);
+                res.type("application/json");
+                Map<String, Object> error = new HashMap<>();
+                error.put("error", "No sources or targets provided");
+                return objectMapper.writeValueAsString(error);
+            }
+            if (sources.size() > MAX_MATRIX_POINTS || targets.size() > MAX_MATRIX_POINTS) {
+                res.status(400);
+                res.type("application/json");
+                Map<String, Object> error = new HashMap<>();
+                error.put("error", "Too many points (max " + MAX_MATRIX_POINTS + " sources and " + MAX_MATRIX_POINTS + " targets)");
+                return objectMapper.writeValueAsString(error);
+            }
+            long startNs = System.nanoTime();
+            DistanceMatrix matrix = routingService.matrix(sources, targets, req.queryParams("metric"), req.queryParams("engine"));
+            long processingMs = (System.nanoTime() - startNs) / 1_000_000L;
+            return streamJson(res, g -> {
+                g.writeStartObject();
+                g.writeArrayFieldStart("distances");
+                for (int i = 0; i < matrix.sourceCount(); i++) {
+                    g.writeStartArray();
+                    for (int j = 0; j < matrix.targetCount(); j++) {
+                        double d = matrix.distance(i, j);
+                        if (Double.isInfinite(d)) {
+                            g.writeNull();
+                        } else {
+                            g.writeNumber(d);
+                        }
+                    }
+                    g.writeEndArray();
+                }
+                g.writeEndArray();
+                g.writeNumberField("processingMs", processingMs);
+                g.writeEndObject();
+            });
+        } catch (IllegalArgumentException e) {
+            res.status(400);
+            res.type("application/json");
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            try {
+                return objectMapper.writeValueAsString(error);
+            } catch (Exception ex) {
+                return "{\"error\":\"Bad request\"}";
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            res.status(500);
+            res.type("application/json");
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Matrix error: " + e.getMessage());
+            try {
+                return objectMapper.writeValueAsString(error);
+            } catch (Exception ex) {
+                return "{\"error\":\"Internal server error\"}";
+            }
+        }
+    }
+    private String handleMetricsGet(Request req, Response res) {
+        try {
+            Map<String, Object> out = new HashMap<>();
+            out.put("metrics", routingService.metrics());
+            res.type("application/json");
+            return objectMapper.writeValueAsString(out);
+        } catch (Exception e) {
+            res.status(500);
+            res.type("application/json");
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            try {
+                return objectMapper.writeValueAsString(error);
+            } catch (Exception ex) {
+                return "{\"error\":\"Internal server error\"}";
+            }
+        }
+    }
+    private String handleMetricsDefine(Request req, Response res) {
+        try {
+            Map<String, Object> body = objectMapper.readValue(req.body(), new TypeReference<Map<String, Object>>() {
+            });
+            Object name = body.get("name");
+            Map<String, Double> factors = objectMapper.convertValue(body.getOrDefault("factors", Map.of()), new TypeReference<Map<String, Double>>() {
+            });
+            long startNs = System.nanoTime();
+            routingService.defineMetric(name == null ? null : name.toString(), factors);
+            long processingMs = (System.nanoTime() - startNs) / 1_000_000L;
+            Map<String, Object> out = new HashMap<>();
+            out.put("metrics", routingService.metrics());
+            out.put("processingMs", processingMs);
+            res.type("application/json");
+            return objectMapper.writeValueAsString(out);
+        } catch (Exception e) {
+            res.status(400);
+            res.type("application/json");
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            try {
+                return objectMapper.writeValueAsString(error);
+            } catch (Exception ex) {
+                return "{\"error\":\"Bad request\"}";
+            }
+        }
+    }
     private String handleBenchmarkStart(Request req, Response res) {
         try {
             int count = 1_000_000;
@@ -333,4 +959,9 @@ public class RoutingController {
             return "Error: " + e.getMessage();
         }
     }
+    private interface JsonBody {
+        void write(JsonGenerator g) throws IOException;
+    }
+    private record GeometryOptions(String format, int precision, int zoom) {
+    }
 }
\ No newline at end of file
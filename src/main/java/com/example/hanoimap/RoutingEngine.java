@@ -1,10 +1,22 @@
 package com.example.hanoimap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 public interface RoutingEngine {
     void init();
     List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon);
+    List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon, String metric);
+    List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon, String metric, QueryTrace trace);
     LatLon randomNodeLatLon(Random random);
     double distanceMeters(LatLon a, LatLon b);
     int nearestNodeIndex(double lat, double lon);
+    long snapKey(double lat, double lon);
+    SnappedPoint snapPoint(double lat, double lon);
+    List<LatLon> route(SnappedPoint from, SnappedPoint to, String metric);
+    DistanceMatrix matrix(List<LatLon> sources, List<LatLon> targets, boolean includePaths);
+    DistanceMatrix matrix(List<LatLon> sources, List<LatLon> targets, boolean includePaths, String metric);
+    List<String> metrics();
+    String metricKey(String metric);
+    void defineMetric(String name, Map<String, Double> roadClassFactors);
+    List<Isochrone> isochrones(double lat, double lon, double[] limits, String metric);
 }
\ No newline at end of file
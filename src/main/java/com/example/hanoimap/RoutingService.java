@@ -1,47 +1,349 @@
 package com.example.hanoimap;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 public class RoutingService {
+    private static final int BATCH_SNAP_CHUNK = 64;
     private final String osmFile;
     private final String graphDir;
-    private RoutingEngine routingEngine;
+    private final EngineRegistry engines;
+    private volatile RoutingEngine routingEngine;
+    private volatile String targetEngine;
+    private RouteCache routeCache;
+    private File routeCacheSnapshot;
+    private WorkerPool batchPool;
+    private ShadowTraffic shadowTraffic;
+    private String shadowEngine;
     public RoutingService(String osmFile, String graphDir) {
         this.osmFile = osmFile;
         this.graphDir = graphDir;
+        this.engines = new EngineRegistry(osmFile, graphDir);
     }
     public void init() {
-        String engine = System.getenv().getOrDefault("ROUTING_ENGINE", "manual").toLowerCase();
-        if (engine.equals("graphhopper")) {
-            routingEngine = new GraphHopperRoutingEngine(osmFile, graphDir);
-        } else {
-            routingEngine = new SimpleRoutingEngine(osmFile, graphDir);
+        targetEngine = EngineRegistry.normalize(System.getenv().getOrDefault("ROUTING_ENGINE", "manual"));
+        routingEngine = engines.await(targetEngine);
+        for (String warm : System.getenv().getOrDefault("WARM_ENGINES", "").split(",")) {
+            if (!warm.isBlank()) {
+                engines.load(warm);
+            }
+        }
+        initRouteCache();
+        double shadowRate = Double.parseDouble(System.getenv().getOrDefault("SHADOW_SAMPLE_RATE", "0"));
+        if (shadowRate > 0) {
+            String engine = System.getenv("SHADOW_ENGINE");
+            shadowEngine = engine == null || engine.isBlank() ? null : EngineRegistry.normalize(engine);
+            shadowTraffic = new ShadowTraffic(Math.min(1.0, shadowRate), Integer.parseInt(System.getenv().getOrDefault("SHADOW_QUEUE", "64")));
+        }
+        int batchWorkers = Integer.parseInt(System.getenv().getOrDefault("BATCH_WORKERS", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        batchPool = new WorkerPool("route-batch", batchWorkers);
+    }
+    private void initRouteCache() {
+        long capacity = Long.parseLong(System.getenv().getOrDefault("ROUTE_CACHE_POINTS", "1000000"));
+        if (capacity <= 0) {
+            routeCache = null;
+            return;
+        }
+        routeCache = new RouteCache(capacity);
+        String snapshot = System.getenv("ROUTE_CACHE_SNAPSHOT");
+        if (snapshot == null || snapshot.isBlank()) {
+            return;
+        }
+        routeCacheSnapshot = new File(snapshot);
+        if (routeCacheSnapshot.exists()) {
+            try {
+                routeCache.load(routeCacheSnapshot, graphStamp());
+                System.out.println("Route cache: " + routeCache.stats().entries() + " entries restored from " + routeCacheSnapshot);
+            } catch (Exception ignored) {
+                routeCache.clear();
+            }
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::saveRouteCache, "route-cache-snapshot"));
+    }
+    private void saveRouteCache() {
+        try {
+            File parent = routeCacheSnapshot.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            routeCache.save(routeCacheSnapshot, graphStamp());
+        } catch (Exception e) {
+            System.out.println("Route cache: failed to save snapshot to " + routeCacheSnapshot + ": " + e.getMessage());
         }
-        routingEngine.init();
     }
-    public synchronized String getEngineName() {
-        if (routingEngine instanceof GraphHopperRoutingEngine) return "graphhopper";
+    private long graphStamp() {
+        File file = new File(osmFile);
+        return file.length() * 31 + file.lastModified();
+    }
+    public String getEngineName() {
+        return engineName(routingEngine);
+    }
+    public String engineName(String requested) {
+        return requested == null || requested.isBlank() ? getEngineName() : EngineRegistry.normalize(requested);
+    }
+    public Map<String, String> engineStates() {
+        return engines.states();
+    }
+    public boolean engineReady(String name) {
+        engines.load(name);
+        return engines.ready(name) != null;
+    }
+    public String engineFailure(String name) {
+        return engines.ready(name) != null ? null : engines.failure(name);
+    }
+    public RoutingEngine awaitEngine(String name) {
+        return engines.await(name);
+    }
+    private RoutingEngine engine(String requested) {
+        if (requested == null || requested.isBlank()) {
+            return routingEngine;
+        }
+        RoutingEngine engine = engines.ready(requested);
+        if (engine == null) {
+            engines.load(requested);
+            String failure = engines.failure(requested);
+            throw new IllegalStateException(failure != null ? failure : "Engine " + EngineRegistry.normalize(requested) + " is still loading");
+        }
+        return engine;
+    }
+    private static String engineName(RoutingEngine engine) {
+        if (engine instanceof GraphHopperRoutingEngine) return "graphhopper";
         return "manual";
     }
-    public synchronized boolean setEngine(String engine) {
-        String e = engine == null ? "manual" : engine.toLowerCase();
-        String cur = getEngineName();
-        if (cur.equals(e)) return false;
-        if (e.equals("graphhopper")) {
-            routingEngine = new GraphHopperRoutingEngine(osmFile, graphDir);
-        } else {
-            routingEngine = new SimpleRoutingEngine(osmFile, graphDir);
+    public boolean setEngine(String engine) {
+        String e = EngineRegistry.normalize(engine);
+        targetEngine = e;
+        RoutingEngine ready = engines.ready(e);
+        if (ready != null) {
+            return publish(e, ready);
         }
-        routingEngine.init();
+        engines.retry(e).whenComplete((loaded, error) -> {
+            if (error == null) {
+                publish(e, loaded);
+            } else {
+                abandon(e, error);
+            }
+        });
+        return false;
+    }
+    private synchronized void abandon(String name, Throwable error) {
+        if (!name.equals(targetEngine)) {
+            return;
+        }
+        targetEngine = getEngineName();
+        System.out.println("Engine switch to " + name + " abandoned, staying on " + targetEngine + ": " + error);
+    }
+    private synchronized boolean publish(String name, RoutingEngine engine) {
+        if (!name.equals(targetEngine) || routingEngine == engine) {
+            return false;
+        }
+        routingEngine = engine;
+        System.out.println("Routing engine: " + name);
         return true;
     }
     public List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon) {
-        return routingEngine.route(fromLat, fromLon, toLat, toLon);
+        return route(fromLat, fromLon, toLat, toLon, null);
+    }
+    public List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon, String metric) {
+        return route(fromLat, fromLon, toLat, toLon, metric, null);
+    }
+    public List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon, String metric, QueryTrace trace) {
+        return route(fromLat, fromLon, toLat, toLon, metric, null, trace);
+    }
+    public List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon, String metric, String engineName, QueryTrace trace) {
+        RoutingEngine engine = engine(engineName);
+        if (trace != null) {
+            trace.engine(engineName(engine));
+        }
+        long startNs = System.nanoTime();
+        List<LatLon> path;
+        if (routeCache == null || trace != null && trace.bypassCache()) {
+            path = engine.route(fromLat, fromLon, toLat, toLon, metric, trace);
+        } else {
+            long from = engine.snapKey(fromLat, fromLon);
+            long to = engine.snapKey(toLat, toLon);
+            if (trace != null) {
+                trace.phase("snapKey");
+            }
+            path = route(engine, from, to, fromLat, fromLon, toLat, toLon, metric, trace);
+        }
+        ShadowTraffic shadow = shadowTraffic;
+        if (shadow != null && (engineName == null || engineName.isBlank()) && (metric == null || metric.isBlank()) && shadow.sample()) {
+            long primaryNs = trace == null || "hit".equals(trace.cacheStatus()) ? -1 : System.nanoTime() - startNs;
+            mirror(shadow, engine, path, primaryNs, fromLat, fromLon, toLat, toLon);
+        }
+        return path;
+    }
+    private void mirror(ShadowTraffic shadow, RoutingEngine primary, List<LatLon> path, long primaryNs, double fromLat, double fromLon, double toLat, double toLon) {
+        String primaryName = engineName(primary);
+        String shadowName = shadowEngine != null ? shadowEngine : primaryName.equals("manual") ? "graphhopper" : "manual";
+        if (shadowName.equals(primaryName)) {
+            return;
+        }
+        RoutingEngine target = engines.ready(shadowName);
+        if (target == null) {
+            engines.load(shadowName);
+            shadow.skip();
+            return;
+        }
+        shadow.mirror(primaryName, path, primaryNs, shadowName, target, fromLat, fromLon, toLat, toLon);
+    }
+    public ShadowTraffic.Stats shadowStats() {
+        return shadowTraffic == null ? null : shadowTraffic.stats();
+    }
+    public ShadowTraffic.Report shadowReport() {
+        return shadowTraffic == null ? null : shadowTraffic.report();
+    }
+    private List<LatLon> route(RoutingEngine engine, long from, long to, double fromLat, double fromLon, double toLat, double toLon, String metric, QueryTrace trace) {
+        RouteCache cache = routeCache;
+        if (cache == null || from == -1 || to == -1) {
+            return engine.route(fromLat, fromLon, toLat, toLon, metric, trace);
+        }
+        RouteCache.Key key = new RouteCache.Key(engineName(engine), from, to, engine.metricKey(metric));
+        RouteCache.Lookup lookup = cache.get(key, () -> {
+            if (trace != null) {
+                trace.phase("cache");
+                trace.cacheStatus("miss");
+            }
+            return engine.route(fromLat, fromLon, toLat, toLon, metric, trace);
+        });
+        if (trace != null && lookup.outcome() != RouteCache.Outcome.MISS) {
+            trace.phase("cache");
+            trace.cacheStatus(lookup.outcome().name().toLowerCase());
+        }
+        return lookup.path();
+    }
+    private List<LatLon> route(RoutingEngine engine, SnappedPoint from, SnappedPoint to, String metric) {
+        RouteCache cache = routeCache;
+        if (cache == null || from.key() == -1 || to.key() == -1) {
+            return engine.route(from, to, metric);
+        }
+        RouteCache.Key key = new RouteCache.Key(engineName(engine), from.key(), to.key(), engine.metricKey(metric));
+        return cache.get(key, () -> engine.route(from, to, metric)).path();
+    }
+    public void routeBatch(List<RouteRequest> requests, String metric, String engineName, boolean requestOrder, BatchSink sink) throws IOException {
+        RoutingEngine engine = engine(engineName);
+        int n = requests.size();
+        Map<LatLon, Integer> pointIndex = new HashMap<>();
+        List<LatLon> points = new ArrayList<>();
+        int[] fromPoint = new int[n];
+        int[] toPoint = new int[n];
+        for (int i = 0; i < n; i++) {
+            RouteRequest r = requests.get(i);
+            fromPoint[i] = pointIndex.computeIfAbsent(new LatLon(r.fromLat(), r.fromLon()), p -> {
+                points.add(p);
+                return points.size() - 1;
+            });
+            toPoint[i] = pointIndex.computeIfAbsent(new LatLon(r.toLat(), r.toLon()), p -> {
+                points.add(p);
+                return points.size() - 1;
+            });
+        }
+        SnappedPoint[] snapped = new SnappedPoint[points.size()];
+        batchPool.forEach(points.size(), BATCH_SNAP_CHUNK, (worker, k) -> snapped[k] = engine.snapPoint(points.get(k).lat(), points.get(k).lon()));
+        Map<List<Long>, Integer> jobByPair = new HashMap<>();
+        int[] jobOf = new int[n];
+        int[] firstOfJob = new int[n];
+        int[] lastOfJob = new int[n];
+        int[] nextInJob = new int[n];
+        int jobCount = 0;
+        for (int i = 0; i < n; i++) {
+            long from = snapped[fromPoint[i]].key();
+            long to = snapped[toPoint[i]].key();
+            Integer job = from == -1 || to == -1 ? null : jobByPair.putIfAbsent(List.of(from, to), jobCount);
+            if (job == null) {
+                job = jobCount++;
+                firstOfJob[job] = i;
+            } else {
+                nextInJob[lastOfJob[job]] = i;
+            }
+            lastOfJob[job] = i;
+            nextInJob[i] = -1;
+            jobOf[i] = job;
+        }
+        BlockingQueue<BatchOutcome> done = new LinkedBlockingQueue<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        for (int j = 0; j < jobCount; j++) {
+            int job = j;
+            SnappedPoint from = snapped[fromPoint[firstOfJob[job]]];
+            SnappedPoint to = snapped[toPoint[firstOfJob[job]]];
+            batchPool.execute(() -> {
+                if (cancelled.get()) {
+                    return;
+                }
+                try {
+                    done.add(new BatchOutcome(job, route(engine, from, to, metric), null));
+                } catch (Throwable e) {
+                    done.add(new BatchOutcome(job, null, e instanceof RuntimeException re ? re : new IllegalStateException("Route failed: " + e, e)));
+                }
+            });
+        }
+        BatchOutcome[] outcomes = new BatchOutcome[jobCount];
+        int emitted = 0;
+        try {
+            for (int received = 0; received < jobCount; received++) {
+                BatchOutcome outcome = done.take();
+                outcomes[outcome.job()] = outcome;
+                if (requestOrder) {
+                    while (emitted < n && outcomes[jobOf[emitted]] != null) {
+                        BatchOutcome o = outcomes[jobOf[emitted]];
+                        sink.accept(emitted++, o.path(), o.error());
+                    }
+                } else {
+                    for (int i = firstOfJob[outcome.job()]; i >= 0; i = nextInJob[i]) {
+                        sink.accept(i, outcome.path(), outcome.error());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch interrupted", e);
+        } finally {
+            cancelled.set(true);
+        }
+    }
+    public RouteCache.Stats routeCacheStats() {
+        return routeCache == null ? null : routeCache.stats();
+    }
+    public DistanceMatrix matrix(List<LatLon> sources, List<LatLon> targets) {
+        return routingEngine.matrix(sources, targets, false);
+    }
+    public DistanceMatrix matrix(List<LatLon> sources, List<LatLon> targets, String metric) {
+        return matrix(sources, targets, metric, null);
+    }
+    public DistanceMatrix matrix(List<LatLon> sources, List<LatLon> targets, String metric, String engineName) {
+        return engine(engineName).matrix(sources, targets, false, metric);
+    }
+    public List<String> metrics() {
+        return routingEngine.metrics();
+    }
+    public void defineMetric(String name, Map<String, Double> roadClassFactors) {
+        routingEngine.defineMetric(name, roadClassFactors);
+        if (routeCache != null) {
+            routeCache.clear();
+        }
+    }
+    public List<Isochrone> isochrones(double lat, double lon, double[] limits, String metric) {
+        return isochrones(lat, lon, limits, metric, null);
+    }
+    public List<Isochrone> isochrones(double lat, double lon, double[] limits, String metric, String engineName) {
+        return engine(engineName).isochrones(lat, lon, limits, metric);
     }
     public LatLon randomNodeLatLon(Random random) {
         return routingEngine.randomNodeLatLon(random);
     }
+    public interface BatchSink {
+        void accept(int index, List<LatLon> path, RuntimeException error) throws IOException;
+    }
+    private record BatchOutcome(int job, List<LatLon> path, RuntimeException error) {
+    }
     public String getOsmFile() {
         return osmFile;
     }
@@ -49,18 +351,17 @@ public class RoutingService {
         return graphDir;
     }
     public List<LatLon> tsp(List<LatLon> points) {
+        return tsp(points, null);
+    }
+    public List<LatLon> tsp(List<LatLon> points, String engineName) {
         if (points.size() < 2) {
             return points;
         }
         int n = points.size();
-        double[][] dist = new double[n][n];
+        DistanceMatrix matrix = engine(engineName).matrix(points, points, true);
+        double[][] dist = matrix.distances();
         for (int i = 0; i < n; i++) {
             dist[i][i] = 0.0;
-            for (int j = i + 1; j < n; j++) {
-                double d = routingEngine.distanceMeters(points.get(i), points.get(j));
-                dist[i][j] = d;
-                dist[j][i] = d;
-            }
         }
         List<Integer> idx = new ArrayList<>();
         for (int i = 0; i < n; i++) {
@@ -85,10 +386,8 @@ public class RoutingService {
         } while (nextPermutation(current));
         List<LatLon> fullPath = new ArrayList<>();
         for (int i = 0; i < bestOrder.size() - 1; i++) {
-            LatLon a = points.get(bestOrder.get(i));
-            LatLon b = points.get(bestOrder.get(i + 1));
-            List<LatLon> segment = route(a.lat(), a.lon(), b.lat(), b.lon());
-            if (!fullPath.isEmpty()) {
+            List<LatLon> segment = matrix.path(bestOrder.get(i), bestOrder.get(i + 1));
+            if (!fullPath.isEmpty() && !segment.isEmpty()) {
                 segment = segment.subList(1, segment.size());
             }
             fullPath.addAll(segment);
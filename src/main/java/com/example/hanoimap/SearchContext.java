@@ -0,0 +1,94 @@
+package com.example.hanoimap;
+import java.util.Arrays;
+final class SearchContext {
+    final double[] dist;
+    final int[] prev;
+    final int[] seenStamp;
+    final int[] closedStamp;
+    final IndexedMinHeap heap;
+    private SearchContext reverse;
+    long relaxed;
+    private int runId;
+    SearchContext(int nodeCount) {
+        dist = new double[nodeCount];
+        prev = new int[nodeCount];
+        seenStamp = new int[nodeCount];
+        closedStamp = new int[nodeCount];
+        heap = new IndexedMinHeap(nodeCount);
+    }
+    int size() {
+        return dist.length;
+    }
+    SearchContext reverse() {
+        if (reverse == null) {
+            reverse = new SearchContext(dist.length);
+        }
+        return reverse;
+    }
+    long[] counters() {
+        long[] out = {heap.polls, heap.pushes, relaxed};
+        if (reverse != null) {
+            out[0] += reverse.heap.polls;
+            out[1] += reverse.heap.pushes;
+            out[2] += reverse.relaxed;
+        }
+        return out;
+    }
+    int[] closedNodes() {
+        int count = 0;
+        for (int stamp : closedStamp) {
+            if (stamp == runId) {
+                count++;
+            }
+        }
+        int[] out = new int[count];
+        count = 0;
+        for (int v = 0; v < closedStamp.length; v++) {
+            if (closedStamp[v] == runId) {
+                out[count++] = v;
+            }
+        }
+        return out;
+    }
+    void nextRun() {
+        if (runId == Integer.MAX_VALUE) {
+            Arrays.fill(seenStamp, 0);
+            Arrays.fill(closedStamp, 0);
+            runId = 0;
+        }
+        runId++;
+    }
+    double getDist(int node) {
+        if (seenStamp[node] != runId) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return dist[node];
+    }
+    void setDist(int node, double value) {
+        dist[node] = value;
+        seenStamp[node] = runId;
+    }
+    int getPrev(int node) {
+        if (seenStamp[node] != runId) {
+            return -1;
+        }
+        return prev[node];
+    }
+    void setPrev(int node, int value) {
+        prev[node] = value;
+        seenStamp[node] = runId;
+    }
+    void seed(int node, double value, double key) {
+        if (value < getDist(node)) {
+            setDist(node, value);
+            setPrev(node, -1);
+            heap.pushOrDecrease(node, key);
+        }
+    }
+    boolean isClosed(int node) {
+        return closedStamp[node] == runId;
+    }
+    void close(int node) {
+        closedStamp[node] = runId;
+    }
+}
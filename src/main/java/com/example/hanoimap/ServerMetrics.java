@@ -0,0 +1,185 @@
+package com.example.hanoimap;
+import spark.Request;
+import spark.Route;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+final class ServerMetrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+    private final ConcurrentHashMap<List<String>, Series> series = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final Function<Request, String> engineName;
+    ServerMetrics(Function<Request, String> engineName) {
+        this.engineName = engineName;
+    }
+    Route timed(String endpoint, Route route) {
+        AtomicInteger active = inFlight.computeIfAbsent(endpoint, k -> new AtomicInteger());
+        return (req, res) -> {
+            String engine = engineLabel(req);
+            active.incrementAndGet();
+            long startNs = System.nanoTime();
+            int status = 500;
+            try {
+                Object body = route.handle(req, res);
+                status = res.raw().getStatus();
+                return body;
+            } finally {
+                active.decrementAndGet();
+                series.computeIfAbsent(List.of(endpoint, engine), k -> new Series()).record(System.nanoTime() - startNs, status);
+            }
+        };
+    }
+    private String engineLabel(Request req) {
+        try {
+            return engineName.apply(req);
+        } catch (IllegalArgumentException e) {
+            return "unknown";
+        }
+    }
+    String render(RouteCache.Stats cache, Map<String, AdmissionControl.Stats> admission, ShadowTraffic.Stats shadow) {
+        StringBuilder out = new StringBuilder(8192);
+        Map<List<String>, Series> sorted = new TreeMap<>((a, b) -> a.get(0).equals(b.get(0)) ? a.get(1).compareTo(b.get(1)) : a.get(0).compareTo(b.get(0)));
+        sorted.putAll(series);
+        out.append("# HELP hanoimap_http_request_duration_seconds Request latency per endpoint and routing engine.\n");
+        out.append("# TYPE hanoimap_http_request_duration_seconds summary\n");
+        for (Map.Entry<List<String>, Series> entry : sorted.entrySet()) {
+            String labels = "endpoint=\"" + entry.getKey().get(0) + "\",engine=\"" + entry.getKey().get(1) + "\"";
+            summary(out, "hanoimap_http_request_duration_seconds", labels, entry.getValue().latency.snapshot(), 1e9);
+        }
+        out.append("# HELP hanoimap_http_requests_total Completed requests by status class.\n");
+        out.append("# TYPE hanoimap_http_requests_total counter\n");
+        for (Map.Entry<List<String>, Series> entry : sorted.entrySet()) {
+            String labels = "endpoint=\"" + entry.getKey().get(0) + "\",engine=\"" + entry.getKey().get(1) + "\"";
+            LongAdder[] statuses = entry.getValue().statuses;
+            for (int i = 0; i < statuses.length; i++) {
+                long count = statuses[i].sum();
+                if (count > 0) {
+                    sample(out, "hanoimap_http_requests_total", labels + ",status=\"" + STATUS_CLASSES[i] + "\"", count);
+                }
+            }
+        }
+        out.append("# HELP hanoimap_http_request_errors_total Requests that ended with a 4xx or 5xx status.\n");
+        out.append("# TYPE hanoimap_http_request_errors_total counter\n");
+        for (Map.Entry<List<String>, Series> entry : sorted.entrySet()) {
+            String labels = "endpoint=\"" + entry.getKey().get(0) + "\",engine=\"" + entry.getKey().get(1) + "\"";
+            sample(out, "hanoimap_http_request_errors_total", labels, entry.getValue().statuses[3].sum() + entry.getValue().statuses[4].sum());
+        }
+        out.append("# HELP hanoimap_http_requests_in_flight Requests currently being handled.\n");
+        out.append("# TYPE hanoimap_http_requests_in_flight gauge\n");
+        for (Map.Entry<String, AtomicInteger> entry : new TreeMap<>(inFlight).entrySet()) {
+            sample(out, "hanoimap_http_requests_in_flight", "endpoint=\"" + entry.getKey() + "\"", entry.getValue().get());
+        }
+        if (admission != null) {
+            out.append("# TYPE hanoimap_admission_waiting gauge\n");
+            for (Map.Entry<String, AdmissionControl.Stats> entry : admission.entrySet()) {
+                sample(out, "hanoimap_admission_waiting", "class=\"" + entry.getKey() + "\"", entry.getValue().waiting());
+            }
+            out.append("# TYPE hanoimap_admission_rejected_total counter\n");
+            for (Map.Entry<String, AdmissionControl.Stats> entry : admission.entrySet()) {
+                sample(out, "hanoimap_admission_rejected_total", "class=\"" + entry.getKey() + "\"", entry.getValue().rejected());
+            }
+        }
+        if (cache != null) {
+            out.append("# TYPE hanoimap_route_cache_entries gauge\n");
+            sample(out, "hanoimap_route_cache_entries", null, cache.entries());
+            out.append("# TYPE hanoimap_route_cache_points gauge\n");
+            sample(out, "hanoimap_route_cache_points", null, cache.points());
+            out.append("# TYPE hanoimap_route_cache_capacity_points gauge\n");
+            sample(out, "hanoimap_route_cache_capacity_points", null, cache.capacityPoints());
+            out.append("# TYPE hanoimap_route_cache_hits_total counter\n");
+            sample(out, "hanoimap_route_cache_hits_total", null, cache.hits());
+            out.append("# TYPE hanoimap_route_cache_misses_total counter\n");
+            sample(out, "hanoimap_route_cache_misses_total", null, cache.misses());
+            out.append("# TYPE hanoimap_route_cache_coalesced_total counter\n");
+            sample(out, "hanoimap_route_cache_coalesced_total", null, cache.coalesced());
+            out.append("# TYPE hanoimap_route_cache_evictions_total counter\n");
+            sample(out, "hanoimap_route_cache_evictions_total", null, cache.evictions());
+        }
+        if (shadow != null) {
+            out.append("# HELP hanoimap_shadow_requests_total Mirrored /api/route queries by outcome.\n");
+            out.append("# TYPE hanoimap_shadow_requests_total counter\n");
+            sample(out, "hanoimap_shadow_requests_total", "result=\"compared\"", shadow.compared());
+            sample(out, "hanoimap_shadow_requests_total", "result=\"dropped\"", shadow.dropped());
+            sample(out, "hanoimap_shadow_requests_total", "result=\"failed\"", shadow.failed());
+            out.append("# TYPE hanoimap_shadow_mismatches_total counter\n");
+            sample(out, "hanoimap_shadow_mismatches_total", null, shadow.mismatched());
+            out.append("# TYPE hanoimap_shadow_queue_depth gauge\n");
+            sample(out, "hanoimap_shadow_queue_depth", null, shadow.queued());
+            out.append("# HELP hanoimap_shadow_duration_seconds Route latency of the primary and the shadow engine on mirrored queries.\n");
+            out.append("# TYPE hanoimap_shadow_duration_seconds summary\n");
+            summary(out, "hanoimap_shadow_duration_seconds", "role=\"primary\"", shadow.primaryLatency(), 1e9);
+            summary(out, "hanoimap_shadow_duration_seconds", "role=\"shadow\"", shadow.shadowLatency(), 1e9);
+            out.append("# HELP hanoimap_shadow_distance_delta_ratio Relative route length difference between the engines.\n");
+            out.append("# TYPE hanoimap_shadow_distance_delta_ratio summary\n");
+            summary(out, "hanoimap_shadow_distance_delta_ratio", null, shadow.distanceDeltaPpm(), 1e6);
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        out.append("# TYPE jvm_memory_used_bytes gauge\n");
+        sample(out, "jvm_memory_used_bytes", "area=\"heap\"", heap.getUsed());
+        sample(out, "jvm_memory_used_bytes", "area=\"nonheap\"", nonHeap.getUsed());
+        out.append("# TYPE jvm_memory_committed_bytes gauge\n");
+        sample(out, "jvm_memory_committed_bytes", "area=\"heap\"", heap.getCommitted());
+        sample(out, "jvm_memory_committed_bytes", "area=\"nonheap\"", nonHeap.getCommitted());
+        out.append("# TYPE jvm_memory_max_bytes gauge\n");
+        sample(out, "jvm_memory_max_bytes", "area=\"heap\"", heap.getMax());
+        out.append("# TYPE jvm_gc_collection_seconds summary\n");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String labels = "gc=\"" + gc.getName().replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+            sample(out, "jvm_gc_collection_seconds_count", labels, gc.getCollectionCount());
+            sample(out, "jvm_gc_collection_seconds_sum", labels, gc.getCollectionTime() / 1e3);
+        }
+        out.append("# TYPE jvm_threads_live gauge\n");
+        sample(out, "jvm_threads_live", null, ManagementFactory.getThreadMXBean().getThreadCount());
+        out.append("# TYPE process_uptime_seconds gauge\n");
+        sample(out, "process_uptime_seconds", null, ManagementFactory.getRuntimeMXBean().getUptime() / 1e3);
+        return out.toString();
+    }
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram.Snapshot snapshot, double scale) {
+        String prefix = labels == null ? "" : labels + ",";
+        for (double q : QUANTILES) {
+            sample(out, name, prefix + "quantile=\"" + q + "\"", snapshot.quantileNanos(q) / scale);
+        }
+        sample(out, name + "_sum", labels, snapshot.sumNanos() / scale);
+        sample(out, name + "_count", labels, snapshot.count());
+    }
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (Double.isNaN(value)) {
+            out.append("NaN");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+    private static final class Series {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder[] statuses = new LongAdder[STATUS_CLASSES.length];
+        Series() {
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = new LongAdder();
+            }
+        }
+        void record(long nanos, int status) {
+            latency.record(nanos);
+            int statusClass = status / 100 - 1;
+            if (statusClass >= 0 && statusClass < statuses.length) {
+                statuses[statusClass].increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.hanoimap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+final class ShadowTraffic {
+    private static final int REPORT_WINDOW = 1000;
+    private static final int WORST_SAMPLES = 10;
+    private static final double MISMATCH_RATIO = 0.01;
+    private final double sampleRate;
+    private final ThreadPoolExecutor executor;
+    private final LatencyHistogram primaryLatency = new LatencyHistogram();
+    private final LatencyHistogram shadowLatency = new LatencyHistogram();
+    private final LatencyHistogram distanceDeltaPpm = new LatencyHistogram();
+    private final AtomicLong compared = new AtomicLong();
+    private final AtomicLong mismatched = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Sample[] window = new Sample[REPORT_WINDOW];
+    private long written;
+    ShadowTraffic(double sampleRate, int queueCapacity) {
+        this.sampleRate = sampleRate;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+            Thread t = new Thread(r, "shadow-traffic");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+    boolean sample() {
+        return ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+    void mirror(String primaryName, List<LatLon> primaryPath, long primaryNs, String shadowName, RoutingEngine shadow,
+                double fromLat, double fromLon, double toLat, double toLon) {
+        try {
+            executor.execute(() -> compare(primaryName, primaryPath, primaryNs, shadowName, shadow, fromLat, fromLon, toLat, toLon));
+        } catch (RejectedExecutionException e) {
+            dropped.incrementAndGet();
+        }
+    }
+    void skip() {
+        dropped.incrementAndGet();
+    }
+    private void compare(String primaryName, List<LatLon> primaryPath, long primaryNs, String shadowName, RoutingEngine shadow,
+                         double fromLat, double fromLon, double toLat, double toLon) {
+        long startNs = System.nanoTime();
+        List<LatLon> shadowPath;
+        try {
+            shadowPath = shadow.route(fromLat, fromLon, toLat, toLon);
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            return;
+        }
+        long shadowNs = System.nanoTime() - startNs;
+        double primaryMeters = primaryPath == null || primaryPath.isEmpty() ? Double.NaN : RouteGeometry.lengthMeters(primaryPath);
+        double shadowMeters = shadowPath == null || shadowPath.isEmpty() ? Double.NaN : RouteGeometry.lengthMeters(shadowPath);
+        double deltaRatio;
+        if (Double.isNaN(primaryMeters) || Double.isNaN(shadowMeters)) {
+            deltaRatio = Double.isNaN(primaryMeters) == Double.isNaN(shadowMeters) ? 0.0 : 1.0;
+        } else {
+            deltaRatio = primaryMeters <= 0.0 ? (shadowMeters <= 0.0 ? 0.0 : 1.0) : Math.abs(shadowMeters - primaryMeters) / primaryMeters;
+        }
+        if (primaryNs >= 0) {
+            primaryLatency.record(primaryNs);
+        }
+        shadowLatency.record(shadowNs);
+        distanceDeltaPpm.record(Math.round(deltaRatio * 1e6));
+        compared.incrementAndGet();
+        if (deltaRatio > MISMATCH_RATIO) {
+            mismatched.incrementAndGet();
+        }
+        Sample sample = new Sample(System.currentTimeMillis(), primaryName, shadowName, fromLat, fromLon, toLat, toLon,
+                primaryMeters, shadowMeters, deltaRatio, primaryNs < 0 ? Double.NaN : primaryNs / 1e6, shadowNs / 1e6);
+        synchronized (window) {
+            window[(int) (written++ % REPORT_WINDOW)] = sample;
+        }
+    }
+    Stats stats() {
+        return new Stats(compared.get(), mismatched.get(), dropped.get(), failed.get(), executor.getQueue().size(),
+                primaryLatency.snapshot(), shadowLatency.snapshot(), distanceDeltaPpm.snapshot());
+    }
+    Report report() {
+        List<Sample> samples = new ArrayList<>(REPORT_WINDOW);
+        synchronized (window) {
+            for (Sample s : window) {
+                if (s != null) {
+                    samples.add(s);
+                }
+            }
+        }
+        int mismatches = 0;
+        int slower = 0;
+        int timed = 0;
+        double sumDelta = 0.0;
+        double sumPrimaryMs = 0.0;
+        double sumShadowMs = 0.0;
+        for (Sample s : samples) {
+            sumDelta += s.distanceDeltaRatio();
+            if (s.distanceDeltaRatio() > MISMATCH_RATIO) {
+                mismatches++;
+            }
+            if (!Double.isNaN(s.primaryMs())) {
+                timed++;
+                sumPrimaryMs += s.primaryMs();
+                sumShadowMs += s.shadowMs();
+                if (s.shadowMs() > s.primaryMs()) {
+                    slower++;
+                }
+            }
+        }
+        List<Sample> worst = new ArrayList<>(samples);
+        worst.sort(Comparator.comparingDouble(Sample::distanceDeltaRatio).reversed());
+        int n = samples.size();
+        return new Report(sampleRate, n, mismatches, n == 0 ? 0.0 : sumDelta / n,
+                timed == 0 ? Double.NaN : sumPrimaryMs / timed, timed == 0 ? Double.NaN : sumShadowMs / timed,
+                timed == 0 ? Double.NaN : (double) slower / timed, List.copyOf(worst.subList(0, Math.min(WORST_SAMPLES, worst.size()))));
+    }
+    record Sample(long atEpochMs, String primaryEngine, String shadowEngine, double fromLat, double fromLon, double toLat, double toLon,
+                  double primaryMeters, double shadowMeters, double distanceDeltaRatio, double primaryMs, double shadowMs) {
+    }
+    record Report(double sampleRate, int samples, int mismatches, double meanDistanceDeltaRatio,
+                  double meanPrimaryMs, double meanShadowMs, double shadowSlowerRatio, List<Sample> worst) {
+    }
+    record Stats(long compared, long mismatched, long dropped, long failed, int queued,
+                 LatencyHistogram.Snapshot primaryLatency, LatencyHistogram.Snapshot shadowLatency, LatencyHistogram.Snapshot distanceDeltaPpm) {
+    }
+}
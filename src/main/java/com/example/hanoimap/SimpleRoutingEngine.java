@@ -9,33 +9,82 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.zip.InflaterInputStream;
 public class SimpleRoutingEngine implements RoutingEngine {
-    private static final int CACHE_VERSION = 1;
-    private static final String CACHE_FILE_NAME = "simple-routing-graph-v1.bin";
+    private static final int CACHE_VERSION = 8;
+    private static final String CACHE_FILE_NAME = "simple-routing-graph-v8.bin";
+    private static final int HILBERT_ORDER = 15;
+    private static final double COORD_SCALE = 1e7;
+    private static final String HIERARCHY_FILE_NAME = "simple-routing-ch-v1.bin";
+    private static final String LANDMARK_FILE_NAME = "simple-routing-alt-v1.bin";
+    private static final String CUSTOMIZABLE_FILE_NAME = "simple-routing-cch-v1.bin";
+    private static final String BLOB_INDEX_FILE_NAME = "osm-blob-index-v1.bin";
+    private static final int NODE_BUCKET_SHIFT = 8;
+    private static final String DEFAULT_METRIC = "distance";
+    private static final String TIME_METRIC = "time";
+    private static final double ISOCHRONE_CELL_METERS = 100.0;
+    private static final int ISOCHRONE_MAX_CELLS = 2048;
+    private static final int LANDMARK_COUNT = 16;
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+    private static final double HEURISTIC_SCALE = 0.999;
+    private static final Route NO_ROUTE = new Route(Double.POSITIVE_INFINITY, null);
+    private final WorkerPool matrixPool = new WorkerPool("matrix");
     private final String osmPbfFile;
     private final String cacheDir;
-    private double[] nodeLat;
-    private double[] nodeLon;
-    private int[] head;
+    private final SearchMode searchMode;
+    private final boolean snapToLargestComponent;
+    private int[] nodeLatE7;
+    private int[] nodeLonE7;
+    private int[] edgeOffset;
     private int[] edgeTo;
-    private int[] edgeNext;
-    private double[] edgeWeightMeters;
-    private GridIndex gridIndex;
-    private double[] dist;
-    private int[] prev;
-    private int[] seenStamp;
-    private int[] closedStamp;
-    private int runId = 1;
+    private float[] edgeWeightMeters;
+    private byte[] edgeRoadClass;
+    private int[] geometryOffset;
+    private int[] geometryLatE7;
+    private int[] geometryLonE7;
+    private GraphComponents components;
+    private int[] edgeFrom;
+    private int[] revOffset;
+    private int[] revEdge;
+    private int[] edgeTwin;
+    private double metersPerLatE7;
+    private double metersPerLonE7;
+    private SpatialIndex spatialIndex;
+    private boolean[] snapAllowed;
+    private ContractionHierarchy hierarchy;
+    private LandmarkTable landmarks;
+    private CustomizableHierarchy customizable;
+    private volatile float[] timeWeights;
+    private final Map<String, MetricWeights> metrics = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<SearchContext> searchPool = new ConcurrentLinkedQueue<>();
     public SimpleRoutingEngine(String osmPbfFile, String cacheDir) {
+        this(osmPbfFile, cacheDir, SearchMode.parse(System.getenv().getOrDefault("MANUAL_SEARCH_MODE", "astar")));
+    }
+    public SimpleRoutingEngine(String osmPbfFile, String cacheDir, SearchMode searchMode) {
         this.osmPbfFile = osmPbfFile;
         this.cacheDir = cacheDir;
+        this.searchMode = searchMode;
+        this.snapToLargestComponent = !"false".equalsIgnoreCase(System.getenv().getOrDefault("MANUAL_SNAP_LARGEST_COMPONENT", "true"));
     }
     public void init() {
         File cacheFile = new File(cacheDir, CACHE_FILE_NAME);
@@ -50,168 +99,1157 @@ public class SimpleRoutingEngine implements RoutingEngine {
         }
         if (!loaded) {
             buildFromOsmPbf();
+        }
+        computeProjection();
+        buildReverseIndex();
+        buildTwinIndex();
+        if (!loaded) {
+            long startNs = System.nanoTime();
+            spatialIndex = buildSpatialIndex();
+            System.out.println("Spatial index: " + spatialIndex.size() + " segments built in " + (System.nanoTime() - startNs) / 1_000_000L + " ms");
             try {
                 cacheFile.getParentFile().mkdirs();
                 saveCache(cacheFile);
             } catch (Exception ignored) {
             }
         }
-        gridIndex = new GridIndex(nodeLat, nodeLon);
-        dist = new double[nodeLat.length];
-        prev = new int[nodeLat.length];
-        seenStamp = new int[nodeLat.length];
-        closedStamp = new int[nodeLat.length];
+        System.out.println(String.format("Manual graph: %d nodes, %d edges, %d shape points, %.1f MB (%.1f MB at double precision)",
+                nodeLatE7.length, edgeTo.length, geometryLatE7.length, footprintBytes(4, 4) / 1048576.0, footprintBytes(8, 8) / 1048576.0));
+        System.out.println(String.format("Components: %d strongly connected, %d islands, largest has %d nodes (%.1f%%)",
+                components.strongCount(), components.weakCount(), components.largestSize(),
+                100.0 * components.largestSize() / Math.max(1, nodeLatE7.length)));
+        if (searchMode == SearchMode.CONTRACTION_HIERARCHY) {
+            hierarchy = loadOrBuildHierarchy(new File(cacheDir, HIERARCHY_FILE_NAME));
+        }
+        if (searchMode == SearchMode.ALT) {
+            landmarks = loadOrBuildLandmarks(new File(cacheDir, LANDMARK_FILE_NAME));
+        }
+        if (searchMode == SearchMode.CUSTOMIZABLE) {
+            customizable = loadOrBuildCustomizable(new File(cacheDir, CUSTOMIZABLE_FILE_NAME));
+            metrics.clear();
+            for (String spec : System.getenv().getOrDefault("MANUAL_METRICS", "distance;time").split(";")) {
+                defineMetricSpec(spec.trim());
+            }
+        }
+        snapAllowed = null;
+        if (snapToLargestComponent) {
+            snapAllowed = new boolean[edgeTo.length];
+            for (int e = 0; e < snapAllowed.length; e++) {
+                snapAllowed[e] = components.inLargest(edgeFrom[e]) && components.inLargest(edgeTo[e]);
+            }
+        }
+        timeWeights = null;
+        searchPool.clear();
+    }
+    public List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon) {
+        return route(fromLat, fromLon, toLat, toLon, null);
+    }
+    public List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon, String metric) {
+        return route(fromLat, fromLon, toLat, toLon, metric, null);
     }
-    public synchronized List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon) {
-        int start = gridIndex.findNearestNode(fromLat, fromLon);
-        int goal = gridIndex.findNearestNode(toLat, toLon);
-        if (start < 0 || goal < 0) {
+    public List<LatLon> route(double fromLat, double fromLon, double toLat, double toLon, String metric, QueryTrace trace) {
+        MetricWeights weights = resolveMetric(metric);
+        Snap from = snap(fromLat, fromLon, trace);
+        Snap to = snap(toLat, toLon, trace);
+        if (trace != null) {
+            trace.phase("snap");
+        }
+        return routeBetween(from, to, weights, trace);
+    }
+    public List<LatLon> route(SnappedPoint from, SnappedPoint to, String metric) {
+        return routeBetween((Snap) from.snap(), (Snap) to.snap(), resolveMetric(metric), null);
+    }
+    private List<LatLon> routeBetween(Snap from, Snap to, MetricWeights weights, QueryTrace trace) {
+        if (from == null || to == null) {
             return List.of();
         }
-        int[] path = shortestPathAStar(start, goal);
-        if (path == null || path.length == 0) {
+        Route route = shortestRoute(from, to, weights, true, trace);
+        if (route.cost() == Double.POSITIVE_INFINITY) {
             return List.of();
         }
-        List<LatLon> points = new ArrayList<>(path.length);
-        for (int idx : path) {
-            points.add(new LatLon(nodeLat[idx], nodeLon[idx]));
+        List<LatLon> path = toLatLon(from, to, route.path(), weightsOf(weights));
+        if (trace != null) {
+            trace.phase("unpack");
         }
-        return points;
+        return path;
     }
-    public synchronized double distanceMeters(LatLon a, LatLon b) {
-        int start = gridIndex.findNearestNode(a.lat(), a.lon());
-        int goal = gridIndex.findNearestNode(b.lat(), b.lon());
-        if (start < 0 || goal < 0) {
+    public double distanceMeters(LatLon a, LatLon b) {
+        Snap from = snap(a.lat(), a.lon());
+        Snap to = snap(b.lat(), b.lon());
+        if (from == null || to == null) {
             return Double.POSITIVE_INFINITY;
         }
-        int[] path = shortestPathAStar(start, goal);
-        if (path == null || path.length < 2) {
+        if (from.equals(to)) {
             return Double.POSITIVE_INFINITY;
         }
-        double total = 0.0;
-        for (int i = 0; i < path.length - 1; i++) {
-            int u = path[i];
-            int v = path[i + 1];
-            total += haversineMeters(nodeLat[u], nodeLon[u], nodeLat[v], nodeLon[v]);
-        }
-        return total;
+        return shortestRoute(from, to, resolveMetric(null), false, null).cost();
     }
     public LatLon randomNodeLatLon(Random random) {
-        if (nodeLat == null || nodeLat.length == 0) {
+        if (nodeLatE7 == null || nodeLatE7.length == 0) {
             return new LatLon(0, 0);
         }
-        int idx = random.nextInt(nodeLat.length);
-        return new LatLon(nodeLat[idx], nodeLon[idx]);
+        int idx = random.nextInt(nodeLatE7.length);
+        return new LatLon(nodeLatE7[idx] / COORD_SCALE, nodeLonE7[idx] / COORD_SCALE);
     }
     public int nearestNodeIndex(double lat, double lon) {
-        return gridIndex.findNearestNode(lat, lon);
-    }
-    private int[] shortestPathAStar(int start, int goal) {
-        int currentRun = runId++;
-        PriorityQueue<NodeEntry> pq = new PriorityQueue<>();
-        setDist(start, 0.0, currentRun);
-        setPrev(start, -1, currentRun);
-        pq.add(new NodeEntry(start, heuristicMeters(start, goal)));
-        while (!pq.isEmpty()) {
-            NodeEntry entry = pq.poll();
-            int u = entry.node;
-            if (closedStamp[u] == currentRun) {
+        Snap snap = snap(lat, lon);
+        if (snap == null) {
+            return -1;
+        }
+        return snap.fraction() <= 0.5 ? edgeFrom[snap.edge()] : edgeTo[snap.edge()];
+    }
+    public long snapKey(double lat, double lon) {
+        return snapKey(snap(lat, lon));
+    }
+    public SnappedPoint snapPoint(double lat, double lon) {
+        Snap snap = snap(lat, lon);
+        return new SnappedPoint(lat, lon, snapKey(snap), snap);
+    }
+    private static long snapKey(Snap snap) {
+        if (snap == null) {
+            return -1;
+        }
+        return ((long) snap.latE7() << 32) | (snap.lonE7() & 0xFFFFFFFFL);
+    }
+    public DistanceMatrix matrix(List<LatLon> sources, List<LatLon> targets, boolean includePaths) {
+        return matrix(sources, targets, includePaths, null);
+    }
+    public DistanceMatrix matrix(List<LatLon> sources, List<LatLon> targets, boolean includePaths, String metric) {
+        MetricWeights weights = resolveMetric(metric);
+        float[] weight = weightsOf(weights);
+        Snap[] sourceSnaps = snapAll(sources);
+        Snap[] targetSnaps = snapAll(targets);
+        VirtualNode[] sourceNodes = new VirtualNode[sourceSnaps.length];
+        VirtualNode[] targetNodes = new VirtualNode[targetSnaps.length];
+        for (int i = 0; i < sourceSnaps.length; i++) {
+            sourceNodes[i] = sourceSnaps[i] == null ? null : virtualSource(sourceSnaps[i], weight);
+        }
+        for (int j = 0; j < targetSnaps.length; j++) {
+            targetNodes[j] = targetSnaps[j] == null ? null : virtualTarget(targetSnaps[j], weight);
+        }
+        int targetCount = targetNodes.length;
+        List<List<LatLon>> paths = includePaths ? new ArrayList<>(Collections.nCopies(sourceNodes.length * targetCount, List.of())) : null;
+        if (weights != null || hierarchy != null) {
+            SearchContext ctx = acquireContext();
+            try {
+                int[][][] hierarchyPaths = includePaths ? new int[sourceNodes.length][targetCount][] : null;
+                double[][] dist = weights != null
+                        ? customizable.manyToMany(ctx, weights.weights, sourceNodes, targetNodes, hierarchyPaths)
+                        : hierarchy.manyToMany(ctx, sourceNodes, targetNodes, hierarchyPaths);
+                for (int i = 0; i < sourceNodes.length; i++) {
+                    for (int j = 0; j < targetCount; j++) {
+                        if (sourceNodes[i] == null || targetNodes[j] == null) {
+                            continue;
+                        }
+                        double direct = directCost(sourceSnaps[i], targetSnaps[j], weight);
+                        int[] path = null;
+                        if (direct <= dist[i][j]) {
+                            dist[i][j] = direct;
+                        } else if (includePaths) {
+                            path = hierarchyPaths[i][j];
+                        }
+                        if (includePaths && dist[i][j] != Double.POSITIVE_INFINITY) {
+                            paths.set(i * targetCount + j, toLatLon(sourceSnaps[i], targetSnaps[j], path, weight));
+                        }
+                    }
+                }
+                return new DistanceMatrix(dist, paths);
+            } finally {
+                searchPool.offer(ctx);
+            }
+        }
+        boolean[] isTarget = new boolean[nodeLatE7.length];
+        int[] targetSeeds = new int[2 * targetCount];
+        int targetSeedCount = 0;
+        for (VirtualNode target : targetNodes) {
+            for (int k = 0; target != null && k < target.size(); k++) {
+                int t = target.nodes()[k];
+                if (!isTarget[t]) {
+                    isTarget[t] = true;
+                    targetSeeds[targetSeedCount++] = t;
+                }
+            }
+        }
+        int seedCount = targetSeedCount;
+        double[][] dist = new double[sourceNodes.length][targetCount];
+        SearchContext[] contexts = new SearchContext[matrixPool.workers()];
+        try {
+            matrixPool.forEach(sourceNodes.length, 1, (worker, i) -> {
+                if (contexts[worker] == null) {
+                    contexts[worker] = acquireContext();
+                }
+                SearchContext ctx = contexts[worker];
+                Arrays.fill(dist[i], Double.POSITIVE_INFINITY);
+                VirtualNode source = sourceNodes[i];
+                if (source == null) {
+                    return;
+                }
+                int settleGoal = 0;
+                for (int k = 0; k < seedCount; k++) {
+                    if (mayReach(source, targetSeeds[k])) {
+                        settleGoal++;
+                    }
+                }
+                if (settleGoal > 0) {
+                    searchOneToMany(ctx, source, isTarget, settleGoal);
+                }
+                for (int j = 0; j < targetCount; j++) {
+                    VirtualNode target = targetNodes[j];
+                    if (target == null) {
+                        continue;
+                    }
+                    double best = directCost(sourceSnaps[i], targetSnaps[j], weight);
+                    int bestNode = -1;
+                    for (int k = 0; settleGoal > 0 && k < target.size(); k++) {
+                        int t = target.nodes()[k];
+                        if (ctx.isClosed(t) && ctx.getDist(t) + target.cost()[k] < best) {
+                            best = ctx.getDist(t) + target.cost()[k];
+                            bestNode = t;
+                        }
+                    }
+                    dist[i][j] = best;
+                    if (includePaths && best != Double.POSITIVE_INFINITY) {
+                        int[] path = bestNode < 0 ? null : reconstructPath(ctx, bestNode);
+                        paths.set(i * targetCount + j, toLatLon(sourceSnaps[i], targetSnaps[j], path, weight));
+                    }
+                }
+            });
+        } finally {
+            for (SearchContext ctx : contexts) {
+                if (ctx != null) {
+                    searchPool.offer(ctx);
+                }
+            }
+        }
+        return new DistanceMatrix(dist, paths);
+    }
+    public List<Isochrone> isochrones(double lat, double lon, double[] limits, String metric) {
+        double maxLimit = 0.0;
+        for (double limit : limits) {
+            if (!(limit > 0.0) || Double.isInfinite(limit)) {
+                throw new IllegalArgumentException("Invalid limit: " + limit);
+            }
+            maxLimit = Math.max(maxLimit, limit);
+        }
+        float[] weight = isochroneWeights(metric);
+        Snap from = snap(lat, lon);
+        if (from == null) {
+            return List.of();
+        }
+        SearchContext ctx = acquireContext();
+        try {
+            int[] settled = searchBounded(ctx, virtualSource(from, weight), weight, maxLimit);
+            int[] box = {from.latE7(), from.lonE7(), from.latE7(), from.lonE7()};
+            includeShape(box, from.edge());
+            for (int u : settled) {
+                for (int e = edgeOffset[u], end = edgeOffset[u + 1]; e < end; e++) {
+                    includeShape(box, e);
+                }
+            }
+            double extentMeters = Math.max((box[2] - (double) box[0]) * metersPerLatE7, (box[3] - (double) box[1]) * metersPerLonE7);
+            double cellMeters = Math.max(ISOCHRONE_CELL_METERS, extentMeters / ISOCHRONE_MAX_CELLS);
+            IsochroneGrid grid = new IsochroneGrid(box[0], box[1], box[2], box[3], cellMeters / metersPerLatE7, cellMeters / metersPerLonE7);
+            grid.sample(from.latE7(), from.lonE7(), 0.0);
+            rasterizeEdge(grid, from.edge(), from.fraction(), 0.0, weight, maxLimit);
+            if (edgeTwin[from.edge()] >= 0) {
+                rasterizeEdge(grid, edgeTwin[from.edge()], 1.0 - from.fraction(), 0.0, weight, maxLimit);
+            }
+            for (int u : settled) {
+                for (int e = edgeOffset[u], end = edgeOffset[u + 1]; e < end; e++) {
+                    rasterizeEdge(grid, e, 0.0, ctx.dist[u], weight, maxLimit);
+                }
+            }
+            List<Isochrone> result = new ArrayList<>(limits.length);
+            for (double limit : limits) {
+                result.add(new Isochrone(limit, grid.polygons(limit)));
+            }
+            return result;
+        } finally {
+            searchPool.offer(ctx);
+        }
+    }
+    public SearchMode getSearchMode() {
+        return searchMode;
+    }
+    public List<String> metrics() {
+        if (customizable == null) {
+            return List.of(DEFAULT_METRIC);
+        }
+        List<String> names = new ArrayList<>(metrics.keySet());
+        Collections.sort(names);
+        return names;
+    }
+    public String metricKey(String metric) {
+        MetricWeights weights = resolveMetric(metric);
+        if (weights == null || metric == null || metric.isBlank() || DEFAULT_METRIC.equals(metric)) {
+            return "";
+        }
+        return metric + "@" + Long.toHexString(weights.fingerprint());
+    }
+    public void defineMetric(String name, Map<String, Double> roadClassFactors) {
+        if (customizable == null) {
+            throw new IllegalArgumentException("Custom metrics require MANUAL_SEARCH_MODE=cch");
+        }
+        if (name == null || name.isBlank() || DEFAULT_METRIC.equals(name)) {
+            throw new IllegalArgumentException("Invalid metric name: " + name);
+        }
+        double[] factors = new double[RoadClass.values().length];
+        for (RoadClass c : RoadClass.values()) {
+            factors[c.ordinal()] = c.secondsPerMeter();
+        }
+        for (Map.Entry<String, Double> entry : roadClassFactors.entrySet()) {
+            RoadClass c = RoadClass.fromTag(entry.getKey());
+            if (c == null) {
+                throw new IllegalArgumentException("Unknown road class: " + entry.getKey());
+            }
+            double factor = entry.getValue() == null ? Double.NaN : entry.getValue();
+            if (!(factor > 0.0) || Double.isInfinite(factor)) {
+                throw new IllegalArgumentException("Invalid factor for " + entry.getKey() + ": " + entry.getValue());
+            }
+            factors[c.ordinal()] *= factor;
+        }
+        customizeMetric(name, factors);
+    }
+    private void defineMetricSpec(String spec) {
+        if (spec.isEmpty()) {
+            return;
+        }
+        int colon = spec.indexOf(':');
+        String name = colon < 0 ? spec : spec.substring(0, colon).trim();
+        double[] factors = new double[RoadClass.values().length];
+        if (DEFAULT_METRIC.equals(name)) {
+            Arrays.fill(factors, 1.0);
+            customizeMetric(name, factors);
+            return;
+        }
+        Map<String, Double> penalties = new HashMap<>();
+        if (colon >= 0) {
+            for (String pair : spec.substring(colon + 1).split(",")) {
+                String[] kv = pair.split("=");
+                if (kv.length != 2) {
+                    throw new IllegalArgumentException("Invalid metric spec: " + spec);
+                }
+                penalties.put(kv[0].trim(), Double.parseDouble(kv[1].trim()));
+            }
+        }
+        defineMetric(name, penalties);
+    }
+    private void customizeMetric(String name, double[] factorPerClass) {
+        float[] weight = new float[edgeTo.length];
+        for (int e = 0; e < weight.length; e++) {
+            weight[e] = roundUpToFloat(edgeWeightMeters[e] * factorPerClass[edgeRoadClass[e]]);
+        }
+        long startNs = System.nanoTime();
+        CustomizableHierarchy.Weights weights = customizable.customize(weight);
+        long fingerprint = 1;
+        for (double factor : factorPerClass) {
+            fingerprint = fingerprint * 31 + Double.doubleToLongBits(factor);
+        }
+        metrics.put(name, new MetricWeights(weight, weights, fingerprint));
+        System.out.println("Metric '" + name + "' customized in " + (System.nanoTime() - startNs) / 1_000_000L + " ms");
+    }
+    private MetricWeights resolveMetric(String metric) {
+        boolean isDefault = metric == null || metric.isBlank() || DEFAULT_METRIC.equals(metric);
+        if (customizable == null) {
+            if (isDefault) {
+                return null;
+            }
+            throw new IllegalArgumentException("Metric '" + metric + "' requires MANUAL_SEARCH_MODE=cch");
+        }
+        MetricWeights weights = metrics.get(isDefault ? DEFAULT_METRIC : metric);
+        if (weights == null) {
+            throw new IllegalArgumentException("Unknown metric: " + metric);
+        }
+        return weights;
+    }
+    private float[] weightsOf(MetricWeights weights) {
+        return weights == null ? edgeWeightMeters : weights.edgeWeight;
+    }
+    private Route shortestRoute(Snap from, Snap to, MetricWeights weights, boolean withPath, QueryTrace trace) {
+        float[] weight = weightsOf(weights);
+        Route direct = new Route(directCost(from, to, weight), null);
+        VirtualNode source = virtualSource(from, weight);
+        VirtualNode target = virtualTarget(to, weight);
+        if (!mayReach(source, target)) {
+            return direct;
+        }
+        SearchContext ctx = acquireContext();
+        try {
+            Route viaGraph = searchRoute(ctx, weights, source, target, from, to, withPath, trace);
+            return viaGraph.cost() < direct.cost() ? viaGraph : direct;
+        } finally {
+            searchPool.offer(ctx);
+        }
+    }
+    private Route searchRoute(SearchContext ctx, MetricWeights weights, VirtualNode source, VirtualNode target, Snap from, Snap to, boolean withPath, QueryTrace trace) {
+        long[] before = trace == null ? null : ctx.counters();
+        int meet;
+        if (weights != null) {
+            meet = customizable.search(ctx, weights.weights, source, target);
+        } else {
+            meet = switch (searchMode) {
+                case BIDIRECTIONAL_ASTAR -> searchBidirectional(ctx, source, target, from, to);
+                case CONTRACTION_HIERARCHY -> hierarchy.search(ctx, source, target);
+                default -> searchAStar(ctx, source, target, to);
+            };
+        }
+        if (trace != null) {
+            recordSearch(trace, ctx, before, weights != null);
+        }
+        if (meet < 0) {
+            return NO_ROUTE;
+        }
+        if (weights != null) {
+            return new Route(customizable.distance(ctx, meet), withPath ? customizable.unpackPath(ctx, weights.weights, meet) : null);
+        }
+        return switch (searchMode) {
+            case BIDIRECTIONAL_ASTAR -> new Route(ctx.getDist(meet) + ctx.reverse().getDist(meet), withPath ? reconstructBidirectionalPath(ctx, meet) : null);
+            case CONTRACTION_HIERARCHY -> new Route(hierarchy.distance(ctx, meet), withPath ? hierarchy.unpackPath(ctx, meet) : null);
+            default -> new Route(ctx.getDist(meet) + target.costAt(meet), withPath ? reconstructPath(ctx, meet) : null);
+        };
+    }
+    private void recordSearch(QueryTrace trace, SearchContext ctx, long[] before, boolean rankSpace) {
+        trace.phase("search");
+        long[] after = ctx.counters();
+        trace.count("settled", after[0] - before[0]);
+        trace.count("pushes", after[1] - before[1]);
+        trace.count("relaxed", after[2] - before[2]);
+        if (!trace.capturesSearchSpace()) {
+            return;
+        }
+        trace.searchSpace("forward", settledPoints(ctx.closedNodes(), rankSpace));
+        if (rankSpace || searchMode == SearchMode.BIDIRECTIONAL_ASTAR || searchMode == SearchMode.CONTRACTION_HIERARCHY) {
+            trace.searchSpace("backward", settledPoints(ctx.reverse().closedNodes(), rankSpace));
+        }
+        trace.phase("trace");
+    }
+    private List<LatLon> settledPoints(int[] nodes, boolean rankSpace) {
+        PackedPath.Builder points = new PackedPath.Builder(nodes.length);
+        for (int v : nodes) {
+            int node = rankSpace ? customizable.nodeOfRank(v) : v;
+            points.add(nodeLatE7[node], nodeLonE7[node]);
+        }
+        return points.build();
+    }
+    private SearchContext acquireContext() {
+        SearchContext ctx = searchPool.poll();
+        if (ctx == null || ctx.size() != nodeLatE7.length) {
+            ctx = new SearchContext(nodeLatE7.length);
+        }
+        return ctx;
+    }
+    private Snap[] snapAll(List<LatLon> points) {
+        Snap[] snaps = new Snap[points.size()];
+        for (int i = 0; i < snaps.length; i++) {
+            snaps[i] = snap(points.get(i).lat(), points.get(i).lon());
+        }
+        return snaps;
+    }
+    private Snap snap(double lat, double lon) {
+        return snap(lat, lon, null);
+    }
+    private Snap snap(double lat, double lon, QueryTrace trace) {
+        int[] probes = trace == null ? null : new int[1];
+        int slot = spatialIndex.nearest(lat, lon, snapAllowed, probes);
+        if (trace != null) {
+            trace.count("snapCandidates", probes[0]);
+        }
+        if (slot < 0) {
+            return null;
+        }
+        int e = spatialIndex.item(slot);
+        int segment = spatialIndex.part(slot);
+        double t = spatialIndex.fractionAlong(slot, lat, lon);
+        int aLat = shapeLatE7(e, segment);
+        int aLon = shapeLonE7(e, segment);
+        int bLat = shapeLatE7(e, segment + 1);
+        int bLon = shapeLonE7(e, segment + 1);
+        double along = 0.0;
+        double total = 0.0;
+        for (int k = 0, segments = segmentCount(e); k < segments; k++) {
+            double length = haversineMeters(shapeLatE7(e, k) / COORD_SCALE, shapeLonE7(e, k) / COORD_SCALE,
+                    shapeLatE7(e, k + 1) / COORD_SCALE, shapeLonE7(e, k + 1) / COORD_SCALE);
+            if (k < segment) {
+                along += length;
+            } else if (k == segment) {
+                along += t * length;
+            }
+            total += length;
+        }
+        return new Snap(e, segment, total > 0.0 ? Math.min(1.0, along / total) : 0.0,
+                (int) Math.round(aLat + t * (bLat - aLat)), (int) Math.round(aLon + t * (bLon - aLon)));
+    }
+    private VirtualNode virtualSource(Snap snap, float[] weight) {
+        int e = snap.edge();
+        int twin = edgeTwin[e];
+        double f = snap.fraction();
+        if (twin < 0) {
+            return new VirtualNode(new int[] {edgeTo[e]}, new double[] {(1.0 - f) * weight[e]});
+        }
+        return new VirtualNode(new int[] {edgeTo[e], edgeTo[twin]}, new double[] {(1.0 - f) * weight[e], f * weight[twin]});
+    }
+    private VirtualNode virtualTarget(Snap snap, float[] weight) {
+        int e = snap.edge();
+        int twin = edgeTwin[e];
+        double f = snap.fraction();
+        if (twin < 0) {
+            return new VirtualNode(new int[] {edgeFrom[e]}, new double[] {f * weight[e]});
+        }
+        return new VirtualNode(new int[] {edgeFrom[e], edgeFrom[twin]}, new double[] {f * weight[e], (1.0 - f) * weight[twin]});
+    }
+    private double directCost(Snap from, Snap to, float[] weight) {
+        if (from.edge() != to.edge()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double best = Double.POSITIVE_INFINITY;
+        if (from.fraction() <= to.fraction()) {
+            best = (to.fraction() - from.fraction()) * weight[from.edge()];
+        }
+        int twin = edgeTwin[from.edge()];
+        if (twin >= 0 && from.fraction() >= to.fraction()) {
+            best = Math.min(best, (from.fraction() - to.fraction()) * weight[twin]);
+        }
+        return best;
+    }
+    private boolean mayReach(VirtualNode source, VirtualNode target) {
+        for (int t : target.nodes()) {
+            if (mayReach(source, t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private boolean mayReach(VirtualNode source, int target) {
+        for (int s : source.nodes()) {
+            if (components.mayReach(s, target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private int segmentCount(int e) {
+        return geometryOffset[e + 1] - geometryOffset[e] + 1;
+    }
+    private int shapeLatE7(int e, int k) {
+        if (k == 0) {
+            return nodeLatE7[edgeFrom[e]];
+        }
+        return k == segmentCount(e) ? nodeLatE7[edgeTo[e]] : geometryLatE7[geometryOffset[e] + k - 1];
+    }
+    private int shapeLonE7(int e, int k) {
+        if (k == 0) {
+            return nodeLonE7[edgeFrom[e]];
+        }
+        return k == segmentCount(e) ? nodeLonE7[edgeTo[e]] : geometryLonE7[geometryOffset[e] + k - 1];
+    }
+    private List<LatLon> toLatLon(Snap from, Snap to, int[] path, float[] weight) {
+        PackedPath.Builder points = new PackedPath.Builder(path == null ? 16 : path.length * 4);
+        points.add(from.latE7(), from.lonE7());
+        if (path == null) {
+            addShape(points, from.edge(), from.segment(), to.segment(), from.fraction() <= to.fraction());
+        } else {
+            boolean leavesForward = path[0] == edgeTo[from.edge()];
+            addShape(points, from.edge(), from.segment(), leavesForward ? segmentCount(from.edge()) - 1 : 0, leavesForward);
+            addPath(points, path, weight);
+            boolean entersForward = path[path.length - 1] == edgeFrom[to.edge()];
+            addShape(points, to.edge(), entersForward ? 0 : segmentCount(to.edge()) - 1, to.segment(), entersForward);
+        }
+        points.add(to.latE7(), to.lonE7());
+        return points.build();
+    }
+    private void addShape(PackedPath.Builder points, int e, int fromSegment, int toSegment, boolean forward) {
+        if (forward) {
+            for (int k = fromSegment + 1; k <= toSegment; k++) {
+                points.add(shapeLatE7(e, k), shapeLonE7(e, k));
+            }
+        } else {
+            for (int k = fromSegment; k > toSegment; k--) {
+                points.add(shapeLatE7(e, k), shapeLonE7(e, k));
+            }
+        }
+    }
+    private void addPath(PackedPath.Builder points, int[] path, float[] weight) {
+        points.add(nodeLatE7[path[0]], nodeLonE7[path[0]]);
+        for (int i = 1; i < path.length; i++) {
+            int e = cheapestEdge(path[i - 1], path[i], weight);
+            if (e >= 0) {
+                for (int g = geometryOffset[e]; g < geometryOffset[e + 1]; g++) {
+                    points.add(geometryLatE7[g], geometryLonE7[g]);
+                }
+            }
+            points.add(nodeLatE7[path[i]], nodeLonE7[path[i]]);
+        }
+    }
+    private int cheapestEdge(int u, int v, float[] weight) {
+        int best = -1;
+        for (int e = edgeOffset[u], end = edgeOffset[u + 1]; e < end; e++) {
+            if (edgeTo[e] == v && (best < 0 || weight[e] < weight[best])) {
+                best = e;
+            }
+        }
+        return best;
+    }
+    private SpatialIndex buildSpatialIndex() {
+        int count = 0;
+        for (int e = 0; e < edgeTo.length; e++) {
+            if (edgeTwin[e] < 0 || e < edgeTwin[e]) {
+                count += segmentCount(e);
+            }
+        }
+        int[] aLat = new int[count];
+        int[] aLon = new int[count];
+        int[] bLat = new int[count];
+        int[] bLon = new int[count];
+        int[] item = new int[count];
+        int[] part = new int[count];
+        int i = 0;
+        for (int e = 0; e < edgeTo.length; e++) {
+            if (edgeTwin[e] >= 0 && e > edgeTwin[e]) {
                 continue;
             }
-            closedStamp[u] = currentRun;
-            if (u == goal) {
-                return reconstructPath(goal, currentRun);
+            for (int k = 0, segments = segmentCount(e); k < segments; k++, i++) {
+                aLat[i] = shapeLatE7(e, k);
+                aLon[i] = shapeLonE7(e, k);
+                bLat[i] = shapeLatE7(e, k + 1);
+                bLon[i] = shapeLonE7(e, k + 1);
+                item[i] = e;
+                part[i] = k;
             }
-            double distU = getDist(u, currentRun);
-            for (int e = head[u]; e != -1; e = edgeNext[e]) {
+        }
+        return SpatialIndex.build(aLat, aLon, bLat, bLon, item, part, metersPerLonE7 / metersPerLatE7);
+    }
+    private float[] isochroneWeights(String metric) {
+        if (customizable != null || !TIME_METRIC.equals(metric)) {
+            return weightsOf(resolveMetric(metric));
+        }
+        float[] weight = timeWeights;
+        if (weight == null) {
+            weight = new float[edgeTo.length];
+            for (int e = 0; e < weight.length; e++) {
+                weight[e] = roundUpToFloat(edgeWeightMeters[e] * RoadClass.byOrdinal(edgeRoadClass[e]).secondsPerMeter());
+            }
+            timeWeights = weight;
+        }
+        return weight;
+    }
+    private int[] searchBounded(SearchContext ctx, VirtualNode source, float[] weight, double limit) {
+        ctx.nextRun();
+        IndexedMinHeap heap = ctx.heap;
+        for (int i = 0; i < source.size(); i++) {
+            if (source.cost()[i] <= limit) {
+                ctx.seed(source.nodes()[i], source.cost()[i], source.cost()[i]);
+            }
+        }
+        int[] settled = new int[256];
+        int count = 0;
+        while (!heap.isEmpty()) {
+            int u = heap.pollMin();
+            ctx.close(u);
+            if (count == settled.length) {
+                settled = Arrays.copyOf(settled, count * 2);
+            }
+            settled[count++] = u;
+            double distU = ctx.dist[u];
+            for (int e = edgeOffset[u], end = edgeOffset[u + 1]; e < end; e++) {
                 int v = edgeTo[e];
+                if (ctx.isClosed(v)) {
+                    continue;
+                }
+                double cand = distU + weight[e];
+                if (cand <= limit && cand < ctx.getDist(v)) {
+                    ctx.setDist(v, cand);
+                    ctx.setPrev(v, u);
+                    heap.pushOrDecrease(v, cand);
+                }
+            }
+        }
+        return Arrays.copyOf(settled, count);
+    }
+    private void includeShape(int[] box, int e) {
+        for (int k = 0, last = segmentCount(e); k <= last; k++) {
+            box[0] = Math.min(box[0], shapeLatE7(e, k));
+            box[1] = Math.min(box[1], shapeLonE7(e, k));
+            box[2] = Math.max(box[2], shapeLatE7(e, k));
+            box[3] = Math.max(box[3], shapeLonE7(e, k));
+        }
+    }
+    private void rasterizeEdge(IsochroneGrid grid, int e, double startFraction, double startCost, float[] weight, double limit) {
+        int segments = segmentCount(e);
+        double total = 0.0;
+        for (int k = 0; k < segments; k++) {
+            total += planarMeters(e, k);
+        }
+        if (total == 0.0 || weight[e] == 0.0f) {
+            return;
+        }
+        double along = 0.0;
+        for (int k = 0; k < segments; k++) {
+            double length = planarMeters(e, k);
+            double t0 = along / total;
+            along += length;
+            double t1 = along / total;
+            if (length == 0.0 || t1 <= startFraction) {
+                continue;
+            }
+            double s0 = Math.max(t0, startFraction);
+            double c0 = startCost + (s0 - startFraction) * weight[e];
+            if (c0 > limit) {
+                return;
+            }
+            double s1 = Math.min(t1, startFraction + (limit - startCost) / weight[e]);
+            double c1 = startCost + (s1 - startFraction) * weight[e];
+            double u0 = (s0 - t0) / (t1 - t0);
+            double u1 = (s1 - t0) / (t1 - t0);
+            int aLat = shapeLatE7(e, k);
+            int aLon = shapeLonE7(e, k);
+            int dLat = shapeLatE7(e, k + 1) - aLat;
+            int dLon = shapeLonE7(e, k + 1) - aLon;
+            grid.segment(aLat + u0 * dLat, aLon + u0 * dLon, c0, aLat + u1 * dLat, aLon + u1 * dLon, c1);
+        }
+    }
+    private double planarMeters(int e, int k) {
+        double dy = (shapeLatE7(e, k + 1) - shapeLatE7(e, k)) * metersPerLatE7;
+        double dx = (shapeLonE7(e, k + 1) - shapeLonE7(e, k)) * metersPerLonE7;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+    private void searchOneToMany(SearchContext ctx, VirtualNode source, boolean[] isTarget, int targetCount) {
+        ctx.nextRun();
+        IndexedMinHeap heap = ctx.heap;
+        for (int i = 0; i < source.size(); i++) {
+            ctx.seed(source.nodes()[i], source.cost()[i], source.cost()[i]);
+        }
+        int found = 0;
+        while (!heap.isEmpty()) {
+            int u = heap.pollMin();
+            ctx.close(u);
+            if (isTarget[u] && ++found == targetCount) {
+                heap.clear();
+                return;
+            }
+            double distU = ctx.dist[u];
+            for (int e = edgeOffset[u], end = edgeOffset[u + 1]; e < end; e++) {
+                int v = edgeTo[e];
+                if (ctx.isClosed(v)) {
+                    continue;
+                }
                 double cand = distU + edgeWeightMeters[e];
-                double cur = getDist(v, currentRun);
-                if (cand < cur) {
-                    setDist(v, cand, currentRun);
-                    setPrev(v, u, currentRun);
-                    pq.add(new NodeEntry(v, cand + heuristicMeters(v, goal)));
+                if (cand < ctx.getDist(v)) {
+                    ctx.setDist(v, cand);
+                    ctx.setPrev(v, u);
+                    heap.pushOrDecrease(v, cand);
                 }
             }
         }
-        return null;
     }
-    private int[] reconstructPath(int goal, int currentRun) {
-        int count = 0;
-        for (int at = goal; at != -1; at = getPrev(at, currentRun)) {
+    private int searchAStar(SearchContext ctx, VirtualNode source, VirtualNode target, Snap to) {
+        ctx.nextRun();
+        IndexedMinHeap heap = ctx.heap;
+        double goalLat = to.latE7();
+        double goalLon = to.lonE7();
+        boolean consistent = landmarks == null;
+        for (int i = 0; i < source.size(); i++) {
+            int s = source.nodes()[i];
+            ctx.seed(s, source.cost()[i], source.cost()[i] + heuristicMeters(s, target, goalLat, goalLon));
+        }
+        double best = Double.POSITIVE_INFINITY;
+        int bestGoal = -1;
+        while (!heap.isEmpty() && heap.peekKey() < best) {
+            int u = heap.pollMin();
+            ctx.close(u);
+            ctx.relaxed += edgeOffset[u + 1] - edgeOffset[u];
+            double distU = ctx.dist[u];
+            double viaGoal = distU + target.costAt(u);
+            if (viaGoal < best) {
+                best = viaGoal;
+                bestGoal = u;
+            }
+            for (int e = edgeOffset[u], end = edgeOffset[u + 1]; e < end; e++) {
+                int v = edgeTo[e];
+                if (consistent && ctx.isClosed(v)) {
+                    continue;
+                }
+                double cand = distU + edgeWeightMeters[e];
+                if (cand < ctx.getDist(v)) {
+                    ctx.setDist(v, cand);
+                    ctx.setPrev(v, u);
+                    heap.pushOrDecrease(v, cand + heuristicMeters(v, target, goalLat, goalLon));
+                }
+            }
+        }
+        heap.clear();
+        return bestGoal;
+    }
+    private int searchBidirectional(SearchContext fwd, VirtualNode source, VirtualNode target, Snap from, Snap to) {
+        SearchContext bwd = fwd.reverse();
+        fwd.nextRun();
+        bwd.nextRun();
+        IndexedMinHeap fwdHeap = fwd.heap;
+        IndexedMinHeap bwdHeap = bwd.heap;
+        double startLat = from.latE7();
+        double startLon = from.lonE7();
+        double goalLat = to.latE7();
+        double goalLon = to.lonE7();
+        for (int i = 0; i < source.size(); i++) {
+            int s = source.nodes()[i];
+            fwd.seed(s, source.cost()[i], source.cost()[i] + averagePotential(s, startLat, startLon, goalLat, goalLon));
+        }
+        for (int i = 0; i < target.size(); i++) {
+            int t = target.nodes()[i];
+            bwd.seed(t, target.cost()[i], target.cost()[i] - averagePotential(t, startLat, startLon, goalLat, goalLon));
+        }
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        for (int s : source.nodes()) {
+            double total = fwd.getDist(s) + bwd.getDist(s);
+            if (total < best) {
+                best = total;
+                meet = s;
+            }
+        }
+        while (!fwdHeap.isEmpty() && !bwdHeap.isEmpty()) {
+            if (fwdHeap.peekKey() + bwdHeap.peekKey() >= best) {
+                break;
+            }
+            if (fwdHeap.size() <= bwdHeap.size()) {
+                int u = fwdHeap.pollMin();
+                fwd.close(u);
+                fwd.relaxed += edgeOffset[u + 1] - edgeOffset[u];
+                double distU = fwd.dist[u];
+                for (int e = edgeOffset[u], end = edgeOffset[u + 1]; e < end; e++) {
+                    int v = edgeTo[e];
+                    if (fwd.isClosed(v)) {
+                        continue;
+                    }
+                    double cand = distU + edgeWeightMeters[e];
+                    if (cand < fwd.getDist(v)) {
+                        fwd.setDist(v, cand);
+                        fwd.setPrev(v, u);
+                        fwdHeap.pushOrDecrease(v, cand + averagePotential(v, startLat, startLon, goalLat, goalLon));
+                        double total = cand + bwd.getDist(v);
+                        if (total < best) {
+                            best = total;
+                            meet = v;
+                        }
+                    }
+                }
+            } else {
+                int u = bwdHeap.pollMin();
+                bwd.close(u);
+                bwd.relaxed += revOffset[u + 1] - revOffset[u];
+                double distU = bwd.dist[u];
+                for (int i = revOffset[u], end = revOffset[u + 1]; i < end; i++) {
+                    int e = revEdge[i];
+                    int v = edgeFrom[e];
+                    if (bwd.isClosed(v)) {
+                        continue;
+                    }
+                    double cand = distU + edgeWeightMeters[e];
+                    if (cand < bwd.getDist(v)) {
+                        bwd.setDist(v, cand);
+                        bwd.setPrev(v, u);
+                        bwdHeap.pushOrDecrease(v, cand - averagePotential(v, startLat, startLon, goalLat, goalLon));
+                        double total = cand + fwd.getDist(v);
+                        if (total < best) {
+                            best = total;
+                            meet = v;
+                        }
+                    }
+                }
+            }
+        }
+        fwdHeap.clear();
+        bwdHeap.clear();
+        return meet;
+    }
+    private int[] reconstructBidirectionalPath(SearchContext fwd, int meet) {
+        SearchContext bwd = fwd.reverse();
+        int forwardCount = 0;
+        for (int at = meet; at != -1; at = fwd.getPrev(at)) {
+            forwardCount++;
+        }
+        int count = forwardCount;
+        for (int at = bwd.getPrev(meet); at != -1; at = bwd.getPrev(at)) {
             count++;
         }
         int[] path = new int[count];
-        int i = count - 1;
-        for (int at = goal; at != -1; at = getPrev(at, currentRun)) {
+        int i = forwardCount - 1;
+        for (int at = meet; at != -1; at = fwd.getPrev(at)) {
             path[i--] = at;
         }
+        i = forwardCount;
+        for (int at = bwd.getPrev(meet); at != -1; at = bwd.getPrev(at)) {
+            path[i++] = at;
+        }
         return path;
     }
-    private double heuristicMeters(int node, int goal) {
-        return haversineMeters(nodeLat[node], nodeLon[node], nodeLat[goal], nodeLon[goal]);
+    private double averagePotential(int node, double startLat, double startLon, double goalLat, double goalLon) {
+        double dxGoal = (nodeLonE7[node] - goalLon) * metersPerLonE7;
+        double dyGoal = (nodeLatE7[node] - goalLat) * metersPerLatE7;
+        double dxStart = (nodeLonE7[node] - startLon) * metersPerLonE7;
+        double dyStart = (nodeLatE7[node] - startLat) * metersPerLatE7;
+        return 0.5 * (Math.sqrt(dxGoal * dxGoal + dyGoal * dyGoal) - Math.sqrt(dxStart * dxStart + dyStart * dyStart));
     }
-    private double getDist(int node, int currentRun) {
-        if (seenStamp[node] != currentRun) {
-            return Double.POSITIVE_INFINITY;
+    private long graphFingerprint() {
+        long h = 0x9E3779B97F4A7C15L ^ nodeLatE7.length;
+        for (int e = 0; e < edgeTo.length; e++) {
+            h = h * 31 + edgeFrom[e];
+            h = h * 31 + edgeTo[e];
+            h = h * 31 + Float.floatToIntBits(edgeWeightMeters[e]);
+        }
+        return h ^ ((long) edgeTo.length << 32);
+    }
+    private LandmarkTable loadOrBuildLandmarks(File file) {
+        long fingerprint = graphFingerprint();
+        if (file.exists()) {
+            try {
+                return LandmarkTable.load(file, nodeLatE7.length, fingerprint);
+            } catch (Exception ignored) {
+            }
         }
-        return dist[node];
+        long startNs = System.nanoTime();
+        LandmarkTable table = LandmarkTable.build(nodeLatE7.length, LANDMARK_COUNT, nodeLatE7, nodeLonE7, metersPerLonE7 / metersPerLatE7, edgeOffset, edgeTo,
+                revOffset, revEdge, edgeFrom, edgeWeightMeters, fingerprint);
+        System.out.println("Landmarks: " + table.landmarkCount() + " built in " + (System.nanoTime() - startNs) / 1_000_000L + " ms");
+        try {
+            file.getParentFile().mkdirs();
+            table.save(file);
+        } catch (Exception ignored) {
+        }
+        return table;
     }
-    private void setDist(int node, double value, int currentRun) {
-        dist[node] = value;
-        seenStamp[node] = currentRun;
+    private CustomizableHierarchy loadOrBuildCustomizable(File file) {
+        long fingerprint = graphFingerprint();
+        if (file.exists()) {
+            try {
+                return CustomizableHierarchy.load(file, nodeLatE7.length, fingerprint);
+            } catch (Exception ignored) {
+            }
+        }
+        long startNs = System.nanoTime();
+        CustomizableHierarchy cch = CustomizableHierarchy.build(edgeFrom, edgeTo, nodeLatE7, nodeLonE7, metersPerLonE7 / metersPerLatE7, fingerprint);
+        System.out.println("Customizable hierarchy: " + cch.arcCount() + " arcs, " + cch.levelCount() + " levels, built in "
+                + (System.nanoTime() - startNs) / 1_000_000L + " ms");
+        try {
+            file.getParentFile().mkdirs();
+            cch.save(file);
+        } catch (Exception ignored) {
+        }
+        return cch;
     }
-    private int getPrev(int node, int currentRun) {
-        if (seenStamp[node] != currentRun) {
-            return -1;
+    private ContractionHierarchy loadOrBuildHierarchy(File file) {
+        long fingerprint = graphFingerprint();
+        if (file.exists()) {
+            try {
+                return ContractionHierarchy.load(file, nodeLatE7.length, fingerprint);
+            } catch (Exception ignored) {
+            }
+        }
+        long startNs = System.nanoTime();
+        ContractionHierarchy ch = ContractionHierarchy.build(nodeLatE7.length, edgeFrom, edgeTo, edgeWeightMeters, fingerprint);
+        System.out.println("Contraction hierarchy: " + ch.edgeCount() + " edges ("
+                + (ch.edgeCount() - edgeTo.length) + " shortcuts) built in " + (System.nanoTime() - startNs) / 1_000_000L + " ms");
+        try {
+            file.getParentFile().mkdirs();
+            ch.save(file);
+        } catch (Exception ignored) {
+        }
+        return ch;
+    }
+    private void buildReverseIndex() {
+        int nodeCount = nodeLatE7.length;
+        int edgeCount = edgeTo.length;
+        edgeFrom = new int[edgeCount];
+        revOffset = new int[nodeCount + 1];
+        revEdge = new int[edgeCount];
+        for (int u = 0; u < nodeCount; u++) {
+            for (int e = edgeOffset[u]; e < edgeOffset[u + 1]; e++) {
+                edgeFrom[e] = u;
+                revOffset[edgeTo[e] + 1]++;
+            }
+        }
+        for (int v = 0; v < nodeCount; v++) {
+            revOffset[v + 1] += revOffset[v];
+        }
+        int[] fill = Arrays.copyOf(revOffset, nodeCount);
+        for (int e = 0; e < edgeCount; e++) {
+            revEdge[fill[edgeTo[e]]++] = e;
+        }
+    }
+    private void buildTwinIndex() {
+        edgeTwin = new int[edgeTo.length];
+        Arrays.fill(edgeTwin, -1);
+        for (int e = 0; e < edgeTo.length; e++) {
+            if (edgeTwin[e] >= 0) {
+                continue;
+            }
+            for (int r = edgeOffset[edgeTo[e]], end = edgeOffset[edgeTo[e] + 1]; r < end; r++) {
+                if (r != e && edgeTwin[r] < 0 && edgeTo[r] == edgeFrom[e] && edgeRoadClass[r] == edgeRoadClass[e] && isReversedShape(e, r)) {
+                    edgeTwin[e] = r;
+                    edgeTwin[r] = e;
+                    break;
+                }
+            }
         }
-        return prev[node];
     }
-    private void setPrev(int node, int value, int currentRun) {
-        prev[node] = value;
-        seenStamp[node] = currentRun;
+    private boolean isReversedShape(int e, int r) {
+        int count = geometryOffset[e + 1] - geometryOffset[e];
+        if (geometryOffset[r + 1] - geometryOffset[r] != count) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            int g = geometryOffset[e] + i;
+            int h = geometryOffset[r + 1] - 1 - i;
+            if (geometryLatE7[g] != geometryLatE7[h] || geometryLonE7[g] != geometryLonE7[h]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    private int[] reconstructPath(SearchContext ctx, int goal) {
+        int count = 0;
+        for (int at = goal; at != -1; at = ctx.getPrev(at)) {
+            count++;
+        }
+        int[] path = new int[count];
+        int i = count - 1;
+        for (int at = goal; at != -1; at = ctx.getPrev(at)) {
+            path[i--] = at;
+        }
+        return path;
+    }
+    private double heuristicMeters(int node, VirtualNode target, double goalLat, double goalLon) {
+        double dx = (nodeLonE7[node] - goalLon) * metersPerLonE7;
+        double dy = (nodeLatE7[node] - goalLat) * metersPerLatE7;
+        double euclidean = Math.sqrt(dx * dx + dy * dy);
+        if (landmarks == null) {
+            return euclidean;
+        }
+        double bound = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < target.size(); i++) {
+            bound = Math.min(bound, landmarks.lowerBound(node, target.nodes()[i]) + target.cost()[i]);
+        }
+        return Math.max(euclidean, bound);
+    }
+    private void computeProjection() {
+        double maxAbsLat = 0.0;
+        for (int lat : nodeLatE7) {
+            maxAbsLat = Math.max(maxAbsLat, Math.abs(lat / COORD_SCALE));
+        }
+        double metersPerDegree = HEURISTIC_SCALE * EARTH_RADIUS_METERS * Math.PI / 180.0;
+        metersPerLatE7 = metersPerDegree / COORD_SCALE;
+        metersPerLonE7 = metersPerLatE7 * Math.cos(Math.toRadians(Math.min(maxAbsLat, 89.0)));
+    }
+    private long footprintBytes(int coordinateBytes, int weightBytes) {
+        long nodes = nodeLatE7.length;
+        long edges = edgeTo.length;
+        long coordinates = nodes * 2L * coordinateBytes;
+        long adjacency = (nodes + 1) * 4L + edges * (5L + weightBytes);
+        long reverse = (nodes + 1) * 4L + edges * 8L;
+        long geometry = (edges + 1) * 4L + geometryLatE7.length * 2L * coordinateBytes;
+        long twins = edges * 4L;
+        long spatial = spatialIndex.size() * (4L * coordinateBytes + 8L);
+        return coordinates + adjacency + reverse + twins + geometry + spatial;
     }
     private void buildFromOsmPbf() {
         List<WayData> ways = new ArrayList<>();
         LongHashSet neededNodeIds = new LongHashSet(1 << 20);
-        try {
-            forEachPrimitiveBlock(osmPbfFile, primitiveBlock -> {
-                PrimitiveBlockParser.parseWays(primitiveBlock, (refs, onewayMode) -> {
-                    WayData way = new WayData(refs, onewayMode);
-                    ways.add(way);
-                    for (long ref : refs) {
-                        neededNodeIds.add(ref);
-                    }
-                });
-            });
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to read OSM PBF ways: " + e.getMessage(), e);
-        }
-        LongIntHashMap nodeIdToIndex = new LongIntHashMap(Math.max(neededNodeIds.size() * 2, 16));
-        nodeLat = new double[neededNodeIds.size()];
-        nodeLon = new double[neededNodeIds.size()];
+        BitSet neededBuckets = new BitSet();
+        LongIntHashMap nodeIdToIndex;
         int[] nodeCount = {0};
-        try {
-            forEachPrimitiveBlock(osmPbfFile, primitiveBlock -> {
-                PrimitiveBlockParser.parseNodes(primitiveBlock, (id, lat, lon) -> {
-                    if (!neededNodeIds.contains(id)) {
-                        return;
+        File pbf = new File(osmPbfFile);
+        File indexFile = new File(cacheDir, BLOB_INDEX_FILE_NAME);
+        PbfBlobIndex index = null;
+        if (indexFile.exists()) {
+            try {
+                index = PbfBlobIndex.load(indexFile, pbf);
+            } catch (Exception ignored) {
+            }
+        }
+        int workers = Integer.parseInt(System.getenv().getOrDefault("IMPORT_WORKERS", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        try (WorkerPool pool = new WorkerPool("pbf-decode", workers)) {
+            List<long[]> slices = new ArrayList<>();
+            List<BlockSummary> summaries = new ArrayList<>();
+            boolean indexed = index != null;
+            BlobSource wayBlobs = indexed ? indexedBlobs(osmPbfFile, index.select(PbfBlobIndex.WAYS))
+                    : handler -> readBlobs(osmPbfFile, (offset, blobBytes) -> {
+                        slices.add(new long[]{offset, blobBytes.length});
+                        handler.accept(offset, blobBytes);
+                    });
+            try {
+                forEachPrimitiveBlock(wayBlobs, pool, "ways", primitiveBlock -> {
+                    List<WayData> blockWays = new ArrayList<>();
+                    PrimitiveBlockParser.parseWays(primitiveBlock, (refs, onewayMode, roadClass) ->
+                            blockWays.add(new WayData(refs, onewayMode, roadClass)));
+                    return new WayBlock(blockWays, indexed ? null : PrimitiveBlockParser.summarize(primitiveBlock));
+                }, block -> {
+                    if (block.summary() != null) {
+                        summaries.add(block.summary());
                     }
-                    if (nodeIdToIndex.containsKey(id)) {
-                        return;
+                    for (WayData way : block.ways()) {
+                        ways.add(way);
+                        for (long ref : way.refs) {
+                            neededNodeIds.add(ref);
+                            if (ref >= 0 && (ref >>> NODE_BUCKET_SHIFT) < Integer.MAX_VALUE) {
+                                neededBuckets.set((int) (ref >>> NODE_BUCKET_SHIFT));
+                            }
+                        }
                     }
-                    int idx = nodeCount[0]++;
-                    nodeIdToIndex.put(id, idx);
-                    nodeLat[idx] = lat;
-                    nodeLon[idx] = lon;
                 });
-            });
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to read OSM PBF nodes: " + e.getMessage(), e);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read OSM PBF ways: " + e.getMessage(), e);
+            }
+            if (!indexed && slices.size() == summaries.size()) {
+                List<PbfBlobIndex.Entry> entries = new ArrayList<>(slices.size());
+                for (int i = 0; i < slices.size(); i++) {
+                    BlockSummary summary = summaries.get(i);
+                    entries.add(new PbfBlobIndex.Entry(slices.get(i)[0], (int) slices.get(i)[1], summary.contents(),
+                            summary.minNodeId(), summary.maxNodeId()));
+                }
+                index = new PbfBlobIndex(entries);
+                try {
+                    indexFile.getParentFile().mkdirs();
+                    index.save(indexFile, pbf);
+                } catch (Exception ignored) {
+                }
+            }
+            BlobSource nodeBlobs = handler -> readBlobs(osmPbfFile, handler);
+            if (index != null) {
+                List<PbfBlobIndex.Entry> nodeEntries = index.selectNodes(neededBuckets, NODE_BUCKET_SHIFT);
+                System.out.println(String.format("OSM PBF blob index: %d of %d blocks (%.1f of %.1f MB) needed for the nodes pass",
+                        nodeEntries.size(), index.size(), index.bytes(nodeEntries) / 1e6, pbf.length() / 1e6));
+                nodeBlobs = indexedBlobs(osmPbfFile, nodeEntries);
+            }
+            nodeIdToIndex = new LongIntHashMap(Math.max(neededNodeIds.size() * 2, 16));
+            nodeLatE7 = new int[neededNodeIds.size()];
+            nodeLonE7 = new int[neededNodeIds.size()];
+            try {
+                forEachPrimitiveBlock(nodeBlobs, pool, "nodes", primitiveBlock -> {
+                    NodeBlock block = new NodeBlock();
+                    PrimitiveBlockParser.parseNodes(primitiveBlock, (id, lat, lon) -> {
+                        if (neededNodeIds.contains(id)) {
+                            block.add(id, (int) Math.round(lat * COORD_SCALE), (int) Math.round(lon * COORD_SCALE));
+                        }
+                    });
+                    return block;
+                }, block -> {
+                    for (int i = 0; i < block.size; i++) {
+                        long id = block.ids[i];
+                        if (nodeIdToIndex.containsKey(id)) {
+                            continue;
+                        }
+                        int idx = nodeCount[0]++;
+                        nodeIdToIndex.put(id, idx);
+                        nodeLatE7[idx] = block.latE7[i];
+                        nodeLonE7[idx] = block.lonE7[i];
+                    }
+                });
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read OSM PBF nodes: " + e.getMessage(), e);
+            }
         }
-        if (nodeCount[0] != nodeLat.length) {
-            nodeLat = Arrays.copyOf(nodeLat, nodeCount[0]);
-            nodeLon = Arrays.copyOf(nodeLon, nodeCount[0]);
+        if (nodeCount[0] != nodeLatE7.length) {
+            nodeLatE7 = Arrays.copyOf(nodeLatE7, nodeCount[0]);
+            nodeLonE7 = Arrays.copyOf(nodeLonE7, nodeCount[0]);
         }
         int edgeCount = 0;
         for (WayData way : ways) {
@@ -221,12 +1259,11 @@ public class SimpleRoutingEngine implements RoutingEngine {
                 case FORWARD, REVERSE -> segments;
             };
         }
-        head = new int[nodeLat.length];
-        Arrays.fill(head, -1);
-        edgeTo = new int[edgeCount];
-        edgeNext = new int[edgeCount];
-        edgeWeightMeters = new double[edgeCount];
-        int[] edgePtr = {0};
+        int[] from = new int[edgeCount];
+        int[] to = new int[edgeCount];
+        float[] weight = new float[edgeCount];
+        byte[] roadClass = new byte[edgeCount];
+        int m = 0;
         for (WayData way : ways) {
             for (int i = 0; i < way.refs.length - 1; i++) {
                 long aId = way.refs[i];
@@ -236,42 +1273,158 @@ public class SimpleRoutingEngine implements RoutingEngine {
                 if (a < 0 || b < 0) {
                     continue;
                 }
-                double w = haversineMeters(nodeLat[a], nodeLon[a], nodeLat[b], nodeLon[b]);
-                switch (way.onewayMode) {
-                    case BOTH -> {
-                        addEdge(a, b, w, edgePtr);
-                        addEdge(b, a, w, edgePtr);
-                    }
-                    case FORWARD -> addEdge(a, b, w, edgePtr);
-                    case REVERSE -> addEdge(b, a, w, edgePtr);
+                float w = roundUpToFloat(haversineMeters(nodeLatE7[a] / COORD_SCALE, nodeLonE7[a] / COORD_SCALE,
+                        nodeLatE7[b] / COORD_SCALE, nodeLonE7[b] / COORD_SCALE));
+                byte c = (byte) way.roadClass.ordinal();
+                if (way.onewayMode != OnewayMode.REVERSE) {
+                    from[m] = a;
+                    to[m] = b;
+                    roadClass[m] = c;
+                    weight[m++] = w;
+                }
+                if (way.onewayMode != OnewayMode.FORWARD) {
+                    from[m] = b;
+                    to[m] = a;
+                    roadClass[m] = c;
+                    weight[m++] = w;
                 }
             }
         }
+        ChainCompression chains = ChainCompression.compress(nodeLatE7, nodeLonE7, from, to, weight, roadClass, m);
+        nodeLatE7 = chains.nodeLatE7;
+        nodeLonE7 = chains.nodeLonE7;
+        buildCompactGraph(chains);
+    }
+    private static float roundUpToFloat(double value) {
+        float f = (float) value;
+        return f < value ? Math.nextUp(f) : f;
     }
-    private void addEdge(int from, int to, double weightMeters, int[] edgePtr) {
-        int e = edgePtr[0]++;
-        edgeTo[e] = to;
-        edgeWeightMeters[e] = weightMeters;
-        edgeNext[e] = head[from];
-        head[from] = e;
+    private void buildCompactGraph(ChainCompression chains) {
+        int[] from = chains.edgeFrom;
+        int[] to = chains.edgeTo;
+        int edgeCount = chains.edgeCount;
+        int nodeCount = nodeLatE7.length;
+        int[] order = hilbertOrder(nodeLatE7, nodeLonE7);
+        int[] newIndex = new int[nodeCount];
+        int[] lat = new int[nodeCount];
+        int[] lon = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            newIndex[order[i]] = i;
+            lat[i] = nodeLatE7[order[i]];
+            lon[i] = nodeLonE7[order[i]];
+        }
+        int[] offset = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            offset[newIndex[from[e]] + 1]++;
+        }
+        for (int u = 0; u < nodeCount; u++) {
+            offset[u + 1] += offset[u];
+        }
+        int[] fill = Arrays.copyOf(offset, nodeCount);
+        int[] slotOf = new int[edgeCount];
+        edgeTo = new int[edgeCount];
+        edgeWeightMeters = new float[edgeCount];
+        edgeRoadClass = new byte[edgeCount];
+        geometryOffset = new int[edgeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            int slot = fill[newIndex[from[e]]]++;
+            slotOf[e] = slot;
+            edgeTo[slot] = newIndex[to[e]];
+            edgeWeightMeters[slot] = chains.edgeWeight[e];
+            edgeRoadClass[slot] = chains.edgeRoadClass[e];
+            geometryOffset[slot + 1] = chains.geometryOffset[e + 1] - chains.geometryOffset[e];
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            geometryOffset[e + 1] += geometryOffset[e];
+        }
+        geometryLatE7 = new int[geometryOffset[edgeCount]];
+        geometryLonE7 = new int[geometryOffset[edgeCount]];
+        for (int e = 0; e < edgeCount; e++) {
+            int src = chains.geometryOffset[e];
+            int length = chains.geometryOffset[e + 1] - src;
+            System.arraycopy(chains.geometryLatE7, src, geometryLatE7, geometryOffset[slotOf[e]], length);
+            System.arraycopy(chains.geometryLonE7, src, geometryLonE7, geometryOffset[slotOf[e]], length);
+        }
+        nodeLatE7 = lat;
+        nodeLonE7 = lon;
+        edgeOffset = offset;
+        components = GraphComponents.compute(edgeOffset, edgeTo);
+    }
+    private static int[] hilbertOrder(int[] lat, int[] lon) {
+        int n = lat.length;
+        long minLat = Integer.MAX_VALUE;
+        long minLon = Integer.MAX_VALUE;
+        long maxLat = Integer.MIN_VALUE;
+        long maxLon = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            minLat = Math.min(minLat, lat[i]);
+            maxLat = Math.max(maxLat, lat[i]);
+            minLon = Math.min(minLon, lon[i]);
+            maxLon = Math.max(maxLon, lon[i]);
+        }
+        int side = 1 << HILBERT_ORDER;
+        double scale = (side - 1) / (double) Math.max(Math.max(maxLat - minLat, maxLon - minLon), 1L);
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int x = (int) ((lon[i] - minLon) * scale);
+            int y = (int) ((lat[i] - minLat) * scale);
+            keys[i] = (hilbertIndex(side, x, y) << 32) | i;
+        }
+        Arrays.parallelSort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+    private static long hilbertIndex(int side, int x, int y) {
+        long d = 0;
+        for (int s = side >>> 1; s > 0; s >>>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = side - 1 - x;
+                    y = side - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
     }
     private void saveCache(File file) throws IOException {
         try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
             out.writeInt(CACHE_VERSION);
-            out.writeInt(nodeLat.length);
+            out.writeInt(nodeLatE7.length);
             out.writeInt(edgeTo.length);
-            for (int i = 0; i < nodeLat.length; i++) {
-                out.writeDouble(nodeLat[i]);
-                out.writeDouble(nodeLon[i]);
+            out.writeInt(geometryLatE7.length);
+            for (int i = 0; i < nodeLatE7.length; i++) {
+                out.writeInt(nodeLatE7[i]);
+                out.writeInt(nodeLonE7[i]);
             }
-            for (int i = 0; i < head.length; i++) {
-                out.writeInt(head[i]);
+            for (int i = 0; i < edgeOffset.length; i++) {
+                out.writeInt(edgeOffset[i]);
             }
             for (int i = 0; i < edgeTo.length; i++) {
                 out.writeInt(edgeTo[i]);
-                out.writeInt(edgeNext[i]);
-                out.writeDouble(edgeWeightMeters[i]);
+                out.writeFloat(edgeWeightMeters[i]);
+                out.writeByte(edgeRoadClass[i]);
+                out.writeInt(geometryOffset[i + 1]);
+            }
+            for (int i = 0; i < geometryLatE7.length; i++) {
+                out.writeInt(geometryLatE7[i]);
+                out.writeInt(geometryLonE7[i]);
             }
+            int[] strong = components.strong();
+            int[] weak = components.weak();
+            for (int i = 0; i < nodeLatE7.length; i++) {
+                out.writeInt(strong[i]);
+                out.writeInt(weak[i]);
+            }
+            spatialIndex.write(out);
         }
     }
     private void loadCache(File file) throws IOException {
@@ -282,24 +1435,47 @@ public class SimpleRoutingEngine implements RoutingEngine {
             }
             int nodeCount = in.readInt();
             int edgeCount = in.readInt();
-            nodeLat = new double[nodeCount];
-            nodeLon = new double[nodeCount];
+            int geometryCount = in.readInt();
+            nodeLatE7 = new int[nodeCount];
+            nodeLonE7 = new int[nodeCount];
             for (int i = 0; i < nodeCount; i++) {
-                nodeLat[i] = in.readDouble();
-                nodeLon[i] = in.readDouble();
+                nodeLatE7[i] = in.readInt();
+                nodeLonE7[i] = in.readInt();
             }
-            head = new int[nodeCount];
-            for (int i = 0; i < nodeCount; i++) {
-                head[i] = in.readInt();
+            edgeOffset = new int[nodeCount + 1];
+            for (int i = 0; i <= nodeCount; i++) {
+                edgeOffset[i] = in.readInt();
+            }
+            if (edgeOffset[nodeCount] != edgeCount) {
+                throw new IOException("Corrupt edge offsets in cache");
             }
             edgeTo = new int[edgeCount];
-            edgeNext = new int[edgeCount];
-            edgeWeightMeters = new double[edgeCount];
+            edgeWeightMeters = new float[edgeCount];
+            edgeRoadClass = new byte[edgeCount];
+            geometryOffset = new int[edgeCount + 1];
             for (int i = 0; i < edgeCount; i++) {
                 edgeTo[i] = in.readInt();
-                edgeNext[i] = in.readInt();
-                edgeWeightMeters[i] = in.readDouble();
+                edgeWeightMeters[i] = in.readFloat();
+                edgeRoadClass[i] = in.readByte();
+                geometryOffset[i + 1] = in.readInt();
+            }
+            if (geometryOffset[edgeCount] != geometryCount) {
+                throw new IOException("Corrupt geometry offsets in cache");
+            }
+            geometryLatE7 = new int[geometryCount];
+            geometryLonE7 = new int[geometryCount];
+            for (int i = 0; i < geometryCount; i++) {
+                geometryLatE7[i] = in.readInt();
+                geometryLonE7[i] = in.readInt();
             }
+            int[] strong = new int[nodeCount];
+            int[] weak = new int[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                strong[i] = in.readInt();
+                weak[i] = in.readInt();
+            }
+            components = new GraphComponents(strong, weak);
+            spatialIndex = SpatialIndex.read(in, edgeCount);
             try {
                 if (in.read() != -1) {
                     throw new IOException("Trailing bytes in cache");
@@ -308,9 +1484,69 @@ public class SimpleRoutingEngine implements RoutingEngine {
             }
         }
     }
-    private static void forEachPrimitiveBlock(String osmPbfFile, PrimitiveBlockConsumer consumer) throws IOException {
-        try (InputStream raw = new BufferedInputStream(new FileInputStream(osmPbfFile))) {
+    private static <T> void forEachPrimitiveBlock(BlobSource source, WorkerPool pool, String pass,
+            BlockDecoder<T> decoder, BlockConsumer<T> consumer) throws IOException {
+        long startNs = System.nanoTime();
+        LongAdder inflateNs = new LongAdder();
+        LongAdder parseNs = new LongAdder();
+        long[] readNs = {0};
+        BlockingQueue<CompletableFuture<T>> pending = new ArrayBlockingQueue<>(pool.workers() * 4);
+        CompletableFuture<T> end = new CompletableFuture<>();
+        Thread reader = new Thread(() -> {
+            try {
+                try {
+                    readNs[0] = source.read((offset, blobBytes) -> pending.put(CompletableFuture.supplyAsync(
+                            () -> decodeBlob(blobBytes, decoder, inflateNs, parseNs), pool::execute)));
+                    pending.put(end);
+                } catch (IOException | RuntimeException e) {
+                    pending.put(CompletableFuture.failedFuture(e));
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }, "pbf-reader");
+        reader.setDaemon(true);
+        reader.start();
+        int blocks = 0;
+        long mergeNs = 0;
+        try {
+            while (true) {
+                CompletableFuture<T> next = pending.take();
+                if (next == end) {
+                    break;
+                }
+                T block;
+                try {
+                    block = next.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof IOException cause) {
+                        throw cause;
+                    }
+                    if (e.getCause() instanceof RuntimeException cause) {
+                        throw cause;
+                    }
+                    throw new IOException(e.getCause());
+                }
+                long mergeStartNs = System.nanoTime();
+                consumer.accept(block);
+                mergeNs += System.nanoTime() - mergeStartNs;
+                blocks++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading OSM PBF", e);
+        } finally {
+            reader.interrupt();
+        }
+        System.out.println(String.format("OSM PBF %s pass: %d blocks in %d ms (read %d ms, inflate %d ms, parse %d ms on %d workers, merge %d ms)",
+                pass, blocks, (System.nanoTime() - startNs) / 1_000_000L, readNs[0] / 1_000_000L, inflateNs.sum() / 1_000_000L,
+                parseNs.sum() / 1_000_000L, pool.workers(), mergeNs / 1_000_000L));
+    }
+    private static long readBlobs(String osmPbfFile, BlobHandler handler) throws IOException, InterruptedException {
+        long readNs = 0;
+        long position = 0;
+        try (InputStream raw = new BufferedInputStream(new FileInputStream(osmPbfFile), 1 << 20)) {
             while (true) {
+                long readStartNs = System.nanoTime();
                 byte[] headerSizeBytes = raw.readNBytes(4);
                 if (headerSizeBytes.length == 0) {
                     break;
@@ -346,32 +1582,66 @@ public class SimpleRoutingEngine implements RoutingEngine {
                 if (blobBytes.length < dataSize) {
                     throw new IOException("Unexpected EOF while reading block blob");
                 }
-                if (!"OSMData".equals(type)) {
-                    continue;
+                readNs += System.nanoTime() - readStartNs;
+                position += 4L + headerSize + dataSize;
+                if ("OSMData".equals(type)) {
+                    handler.accept(position - dataSize, blobBytes);
                 }
-                ProtoReader blobReader = new ProtoReader(blobBytes);
-                byte[] rawData = null;
-                byte[] zlibData = null;
-                while (!blobReader.isAtEnd()) {
-                    int tag = blobReader.readTag();
-                    int fieldNumber = tag >>> 3;
-                    int wireType = tag & 7;
-                    switch (fieldNumber) {
-                        case 1 -> rawData = blobReader.readBytes(wireType);
-                        case 3 -> zlibData = blobReader.readBytes(wireType);
-                        default -> blobReader.skipField(wireType);
+            }
+        }
+        return readNs;
+    }
+    private static BlobSource indexedBlobs(String osmPbfFile, List<PbfBlobIndex.Entry> entries) {
+        return handler -> {
+            long readNs = 0;
+            try (FileChannel channel = FileChannel.open(Path.of(osmPbfFile), StandardOpenOption.READ)) {
+                for (PbfBlobIndex.Entry entry : entries) {
+                    long readStartNs = System.nanoTime();
+                    byte[] blobBytes = new byte[entry.size()];
+                    ByteBuffer buffer = ByteBuffer.wrap(blobBytes);
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, entry.offset() + buffer.position()) < 0) {
+                            throw new IOException("Unexpected EOF while reading indexed block blob");
+                        }
                     }
+                    readNs += System.nanoTime() - readStartNs;
+                    handler.accept(entry.offset(), blobBytes);
                 }
-                byte[] primitiveBlockBytes;
-                if (rawData != null) {
-                    primitiveBlockBytes = rawData;
-                } else if (zlibData != null) {
-                    primitiveBlockBytes = inflate(zlibData);
-                } else {
-                    throw new IOException("Unsupported blob encoding");
+            }
+            return readNs;
+        };
+    }
+    private static <T> T decodeBlob(byte[] blobBytes, BlockDecoder<T> decoder, LongAdder inflateNs, LongAdder parseNs) {
+        try {
+            long startNs = System.nanoTime();
+            ProtoReader blobReader = new ProtoReader(blobBytes);
+            byte[] rawData = null;
+            byte[] zlibData = null;
+            while (!blobReader.isAtEnd()) {
+                int tag = blobReader.readTag();
+                int fieldNumber = tag >>> 3;
+                int wireType = tag & 7;
+                switch (fieldNumber) {
+                    case 1 -> rawData = blobReader.readBytes(wireType);
+                    case 3 -> zlibData = blobReader.readBytes(wireType);
+                    default -> blobReader.skipField(wireType);
                 }
-                consumer.accept(primitiveBlockBytes);
             }
+            byte[] primitiveBlockBytes;
+            if (rawData != null) {
+                primitiveBlockBytes = rawData;
+            } else if (zlibData != null) {
+                primitiveBlockBytes = inflate(zlibData);
+            } else {
+                throw new IOException("Unsupported blob encoding");
+            }
+            long parseStartNs = System.nanoTime();
+            inflateNs.add(parseStartNs - startNs);
+            T block = decoder.decode(primitiveBlockBytes);
+            parseNs.add(System.nanoTime() - parseStartNs);
+            return block;
+        } catch (IOException e) {
+            throw new CompletionException(e);
         }
     }
     private static byte[] inflate(byte[] zlibData) throws IOException {
@@ -380,7 +1650,7 @@ public class SimpleRoutingEngine implements RoutingEngine {
         }
     }
     private static double haversineMeters(double lat1, double lon1, double lat2, double lon2) {
-        double r = 6371000.0;
+        double r = EARTH_RADIUS_METERS;
         double phi1 = Math.toRadians(lat1);
         double phi2 = Math.toRadians(lat2);
         double dPhi = Math.toRadians(lat2 - lat1);
@@ -390,15 +1660,44 @@ public class SimpleRoutingEngine implements RoutingEngine {
         double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
         return r * c;
     }
-    private record NodeEntry(int node, double fScore) implements Comparable<NodeEntry> {
-        @Override
-        public int compareTo(NodeEntry o) {
-            return Double.compare(this.fScore, o.fScore);
+    public enum SearchMode {
+        ASTAR,
+        BIDIRECTIONAL_ASTAR,
+        CONTRACTION_HIERARCHY,
+        ALT,
+        CUSTOMIZABLE;
+        public static SearchMode parse(String value) {
+            String v = value == null ? "" : value.trim().toLowerCase();
+            return switch (v) {
+                case "bidirectional", "bidirectional_astar", "bidir" -> BIDIRECTIONAL_ASTAR;
+                case "ch", "contraction_hierarchy" -> CONTRACTION_HIERARCHY;
+                case "alt", "landmarks" -> ALT;
+                case "cch", "customizable" -> CUSTOMIZABLE;
+                default -> ASTAR;
+            };
         }
     }
     @FunctionalInterface
-    private interface PrimitiveBlockConsumer {
-        void accept(byte[] primitiveBlockBytes) throws IOException;
+    private interface BlobHandler {
+        void accept(long offset, byte[] blobBytes) throws IOException, InterruptedException;
+    }
+    @FunctionalInterface
+    private interface BlobSource {
+        long read(BlobHandler handler) throws IOException, InterruptedException;
+    }
+    @FunctionalInterface
+    private interface BlockDecoder<T> {
+        T decode(byte[] primitiveBlockBytes) throws IOException;
+    }
+    @FunctionalInterface
+    private interface BlockConsumer<T> {
+        void accept(T block);
+    }
+    private record MetricWeights(float[] edgeWeight, CustomizableHierarchy.Weights weights, long fingerprint) {
+    }
+    private record Snap(int edge, int segment, double fraction, int latE7, int lonE7) {
+    }
+    private record Route(double cost, int[] path) {
     }
     private enum OnewayMode {
         BOTH,
@@ -408,119 +1707,32 @@ public class SimpleRoutingEngine implements RoutingEngine {
     private static final class WayData {
         private final long[] refs;
         private final OnewayMode onewayMode;
-        private WayData(long[] refs, OnewayMode onewayMode) {
+        private final RoadClass roadClass;
+        private WayData(long[] refs, OnewayMode onewayMode, RoadClass roadClass) {
             this.refs = refs;
             this.onewayMode = onewayMode;
+            this.roadClass = roadClass;
         }
     }
-    private static final class GridIndex {
-        private static final double CELL_SIZE_DEG = 0.002;
-        private final double[] lat;
-        private final double[] lon;
-        private final double minLat;
-        private final double minLon;
-        private final LongIntHashMap cellHead;
-        private final int[] nextInCell;
-        private GridIndex(double[] lat, double[] lon) {
-            this.lat = lat;
-            this.lon = lon;
-            double minLatTmp = Double.POSITIVE_INFINITY;
-            double minLonTmp = Double.POSITIVE_INFINITY;
-            for (int i = 0; i < lat.length; i++) {
-                minLatTmp = Math.min(minLatTmp, lat[i]);
-                minLonTmp = Math.min(minLonTmp, lon[i]);
-            }
-            this.minLat = minLatTmp;
-            this.minLon = minLonTmp;
-            this.cellHead = new LongIntHashMap(Math.max(lat.length / 2, 16));
-            this.nextInCell = new int[lat.length];
-            Arrays.fill(nextInCell, -1);
-            for (int i = 0; i < lat.length; i++) {
-                long key = cellKey(lat[i], lon[i]);
-                int head = cellHead.getOrDefault(key, -1);
-                nextInCell[i] = head;
-                cellHead.put(key, i);
-            }
-        }
-        int findNearestNode(double qLat, double qLon) {
-            if (lat.length == 0) {
-                return -1;
-            }
-            int baseX = cellX(qLon);
-            int baseY = cellY(qLat);
-            int best = -1;
-            double bestDist = Double.POSITIVE_INFINITY;
-            for (int r = 0; r <= 20; r++) {
-                boolean anyCell = false;
-                for (int dx = -r; dx <= r; dx++) {
-                    int x = baseX + dx;
-                    int y1 = baseY - r;
-                    int y2 = baseY + r;
-                    ScanResult res1 = scanCell(x, y1, qLat, qLon, best, bestDist);
-                    anyCell |= res1.foundAny;
-                    best = res1.bestNode;
-                    bestDist = res1.bestDist;
-                    if (r != 0) {
-                        ScanResult res2 = scanCell(x, y2, qLat, qLon, best, bestDist);
-                        anyCell |= res2.foundAny;
-                        best = res2.bestNode;
-                        bestDist = res2.bestDist;
-                    }
-                }
-                for (int dy = -r + 1; dy <= r - 1; dy++) {
-                    int y = baseY + dy;
-                    int x1 = baseX - r;
-                    int x2 = baseX + r;
-                    ScanResult res1 = scanCell(x1, y, qLat, qLon, best, bestDist);
-                    anyCell |= res1.foundAny;
-                    best = res1.bestNode;
-                    bestDist = res1.bestDist;
-                    if (r != 0) {
-                        ScanResult res2 = scanCell(x2, y, qLat, qLon, best, bestDist);
-                        anyCell |= res2.foundAny;
-                        best = res2.bestNode;
-                        bestDist = res2.bestDist;
-                    }
-                }
-                if (best != -1 && anyCell && r >= 1) {
-                    double approxCellMeters = CELL_SIZE_DEG * 111320.0;
-                    if (r * approxCellMeters > bestDist) {
-                        break;
-                    }
-                }
-            }
-            return best;
-        }
-        private ScanResult scanCell(int cx, int cy, double qLat, double qLon, int bestNode, double bestDist) {
-            long key = (((long) cx) << 32) ^ (cy & 0xFFFFFFFFL);
-            int node = cellHead.getOrDefault(key, -1);
-            if (node == -1) {
-                return new ScanResult(bestNode, bestDist, false);
-            }
-            boolean found = false;
-            while (node != -1) {
-                double d = haversineMeters(qLat, qLon, lat[node], lon[node]);
-                if (d < bestDist) {
-                    bestDist = d;
-                    bestNode = node;
-                }
-                found = true;
-                node = nextInCell[node];
+    private record WayBlock(List<WayData> ways, BlockSummary summary) {
+    }
+    private record BlockSummary(int contents, long minNodeId, long maxNodeId) {
+    }
+    private static final class NodeBlock {
+        private long[] ids = new long[64];
+        private int[] latE7 = new int[64];
+        private int[] lonE7 = new int[64];
+        private int size;
+        void add(long id, int lat, int lon) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                latE7 = Arrays.copyOf(latE7, size * 2);
+                lonE7 = Arrays.copyOf(lonE7, size * 2);
             }
-            return new ScanResult(bestNode, bestDist, found);
-        }
-        private long cellKey(double lat, double lon) {
-            int cx = cellX(lon);
-            int cy = cellY(lat);
-            return (((long) cx) << 32) ^ (cy & 0xFFFFFFFFL);
-        }
-        private int cellX(double lon) {
-            return (int) Math.floor((lon - minLon) / CELL_SIZE_DEG);
-        }
-        private int cellY(double lat) {
-            return (int) Math.floor((lat - minLat) / CELL_SIZE_DEG);
-        }
-        private record ScanResult(int bestNode, double bestDist, boolean foundAny) {
+            ids[size] = id;
+            latE7[size] = lat;
+            lonE7[size] = lon;
+            size++;
         }
     }
     private static final class PrimitiveBlockParser {
@@ -550,9 +1762,10 @@ public class SimpleRoutingEngine implements RoutingEngine {
                     if (fieldNumber == 3) {
                         byte[] wayBytes = pg.readBytes(wireType);
                         WayParsed way = parseWay(wayBytes);
-                        if (way != null && isRoutableHighway(way.keys, way.vals, stringTable)) {
+                        RoadClass roadClass = way == null ? null : getRoadClass(way.keys, way.vals, stringTable);
+                        if (roadClass != null) {
                             OnewayMode mode = getOnewayMode(way.keys, way.vals, stringTable);
-                            handler.onWay(way.refs, mode);
+                            handler.onWay(way.refs, mode, roadClass);
                         }
                     } else {
                         pg.skipField(wireType);
@@ -596,6 +1809,76 @@ public class SimpleRoutingEngine implements RoutingEngine {
                 }
             }
         }
+        static BlockSummary summarize(byte[] primitiveBlockBytes) throws IOException {
+            ProtoReader block = new ProtoReader(primitiveBlockBytes);
+            int contents = 0;
+            long[] range = {Long.MAX_VALUE, Long.MIN_VALUE};
+            while (!block.isAtEnd()) {
+                int tag = block.readTag();
+                int wireType = tag & 7;
+                if (tag >>> 3 != 2) {
+                    block.skipField(wireType);
+                    continue;
+                }
+                ProtoReader pg = new ProtoReader(block.readBytes(wireType));
+                while (!pg.isAtEnd()) {
+                    int pgTag = pg.readTag();
+                    int pgWireType = pgTag & 7;
+                    switch (pgTag >>> 3) {
+                        case 1 -> {
+                            contents |= PbfBlobIndex.NODES;
+                            nodeIdRange(pg.readBytes(pgWireType), range);
+                        }
+                        case 2 -> {
+                            contents |= PbfBlobIndex.DENSE_NODES;
+                            denseNodeIdRange(pg.readBytes(pgWireType), range);
+                        }
+                        case 3 -> {
+                            contents |= PbfBlobIndex.WAYS;
+                            pg.skipField(pgWireType);
+                        }
+                        case 4 -> {
+                            contents |= PbfBlobIndex.RELATIONS;
+                            pg.skipField(pgWireType);
+                        }
+                        default -> pg.skipField(pgWireType);
+                    }
+                }
+            }
+            return new BlockSummary(contents, range[0], range[1]);
+        }
+        private static void nodeIdRange(byte[] nodeBytes, long[] range) throws IOException {
+            ProtoReader n = new ProtoReader(nodeBytes);
+            while (!n.isAtEnd()) {
+                int tag = n.readTag();
+                int wireType = tag & 7;
+                if (tag >>> 3 == 1) {
+                    long id = n.readInt64(wireType);
+                    range[0] = Math.min(range[0], id);
+                    range[1] = Math.max(range[1], id);
+                    return;
+                }
+                n.skipField(wireType);
+            }
+        }
+        private static void denseNodeIdRange(byte[] denseBytes, long[] range) throws IOException {
+            ProtoReader dn = new ProtoReader(denseBytes);
+            while (!dn.isAtEnd()) {
+                int tag = dn.readTag();
+                int wireType = tag & 7;
+                if (tag >>> 3 != 1) {
+                    dn.skipField(wireType);
+                    continue;
+                }
+                ProtoReader idR = new ProtoReader(dn.readBytes(wireType));
+                long id = 0;
+                while (!idR.isAtEnd()) {
+                    id += idR.readSInt64Packed();
+                    range[0] = Math.min(range[0], id);
+                    range[1] = Math.max(range[1], id);
+                }
+            }
+        }
         private static void parseNode(byte[] nodeBytes, long granularity, long latOffset, long lonOffset, NodeHandler handler) throws IOException {
             ProtoReader n = new ProtoReader(nodeBytes);
             long id = 0;
@@ -723,24 +2006,14 @@ public class SimpleRoutingEngine implements RoutingEngine {
             }
             return Arrays.copyOf(tmp, n);
         }
-        private static boolean isRoutableHighway(int[] keys, int[] vals, List<byte[]> stringTable) {
-            String highway = null;
+        private static RoadClass getRoadClass(int[] keys, int[] vals, List<byte[]> stringTable) {
             for (int i = 0; i < Math.min(keys.length, vals.length); i++) {
                 String k = getString(stringTable, keys[i]);
                 if ("highway".equals(k)) {
-                    highway = getString(stringTable, vals[i]);
-                    break;
+                    return RoadClass.fromTag(getString(stringTable, vals[i]));
                 }
             }
-            if (highway == null) {
-                return false;
-            }
-            return switch (highway) {
-                case "motorway", "trunk", "primary", "secondary", "tertiary",
-                     "unclassified", "residential", "service", "living_street",
-                     "motorway_link", "trunk_link", "primary_link", "secondary_link", "tertiary_link" -> true;
-                default -> false;
-            };
+            return null;
         }
         private static boolean isAccessAllowed(int[] keys, int[] vals, List<byte[]> stringTable) {
             for (int i = 0; i < Math.min(keys.length, vals.length); i++) {
@@ -790,7 +2063,7 @@ public class SimpleRoutingEngine implements RoutingEngine {
         }
         @FunctionalInterface
         interface WayHandler {
-            void onWay(long[] refs, OnewayMode onewayMode);
+            void onWay(long[] refs, OnewayMode onewayMode, RoadClass roadClass);
         }
         @FunctionalInterface
         interface NodeHandler {
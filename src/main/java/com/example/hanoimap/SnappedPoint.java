@@ -0,0 +1,3 @@
+package com.example.hanoimap;
+public record SnappedPoint(double lat, double lon, long key, Object snap) {
+}
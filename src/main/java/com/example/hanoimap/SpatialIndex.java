@@ -0,0 +1,268 @@
+package com.example.hanoimap;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+final class SpatialIndex {
+    private static final int LEAF_SIZE = 8;
+    private final int[] aLatE7;
+    private final int[] aLonE7;
+    private final int[] bLatE7;
+    private final int[] bLonE7;
+    private final int[] item;
+    private final int[] part;
+    private final int[] boxMinLat;
+    private final int[] boxMaxLat;
+    private final int[] boxMinLon;
+    private final int[] boxMaxLon;
+    private final double lonScale;
+    private SpatialIndex(int[] aLatE7, int[] aLonE7, int[] bLatE7, int[] bLonE7, int[] item, int[] part, double lonScale) {
+        int n = item.length;
+        this.aLatE7 = aLatE7;
+        this.aLonE7 = aLonE7;
+        this.bLatE7 = bLatE7;
+        this.bLonE7 = bLonE7;
+        this.item = item;
+        this.part = part;
+        this.lonScale = lonScale;
+        this.boxMinLat = new int[n];
+        this.boxMaxLat = new int[n];
+        this.boxMinLon = new int[n];
+        this.boxMaxLon = new int[n];
+    }
+    int size() {
+        return item.length;
+    }
+    int item(int slot) {
+        return item[slot];
+    }
+    int part(int slot) {
+        return part[slot];
+    }
+    static SpatialIndex build(int[] aLatE7, int[] aLonE7, int[] bLatE7, int[] bLonE7, int[] item, int[] part, double lonScale) {
+        SpatialIndex index = new SpatialIndex(aLatE7.clone(), aLonE7.clone(), bLatE7.clone(), bLonE7.clone(), item.clone(), part.clone(), lonScale);
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = item.length;
+        while (top > 0) {
+            int end = stack[--top];
+            int begin = stack[--top];
+            if (end - begin <= LEAF_SIZE) {
+                continue;
+            }
+            int mid = (begin + end) >>> 1;
+            index.select(begin, end, mid, index.longerAxis(begin, end));
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = begin;
+            stack[top++] = mid;
+            stack[top++] = mid + 1;
+            stack[top++] = end;
+        }
+        index.computeBoxes(0, item.length);
+        return index;
+    }
+    int nearest(double lat, double lon, boolean[] allowed) {
+        return nearest(lat, lon, allowed, null);
+    }
+    int nearest(double lat, double lon, boolean[] allowed, int[] probes) {
+        return nearest(0, item.length, lat * 1e7, lon * 1e7, allowed, -1, probes);
+    }
+    private int nearest(int begin, int end, double qLat, double qLon, boolean[] allowed, int best, int[] probes) {
+        if (begin >= end) {
+            return best;
+        }
+        int mid = (begin + end) >>> 1;
+        double bestDist = best < 0 ? Double.POSITIVE_INFINITY : distanceSquared(best, qLat, qLon);
+        if (boxDistanceSquared(mid, qLat, qLon) >= bestDist) {
+            return best;
+        }
+        if (end - begin <= LEAF_SIZE) {
+            if (probes != null) {
+                probes[0] += end - begin;
+            }
+            for (int i = begin; i < end; i++) {
+                if (allowed == null || allowed[item[i]]) {
+                    double d = distanceSquared(i, qLat, qLon);
+                    if (d < bestDist) {
+                        bestDist = d;
+                        best = i;
+                    }
+                }
+            }
+            return best;
+        }
+        if (probes != null) {
+            probes[0]++;
+        }
+        if ((allowed == null || allowed[item[mid]]) && distanceSquared(mid, qLat, qLon) < bestDist) {
+            best = mid;
+        }
+        if (boxDistanceSquared((begin + mid) >>> 1, qLat, qLon) <= boxDistanceSquared((mid + 1 + end) >>> 1, qLat, qLon)) {
+            best = nearest(begin, mid, qLat, qLon, allowed, best, probes);
+            return nearest(mid + 1, end, qLat, qLon, allowed, best, probes);
+        }
+        best = nearest(mid + 1, end, qLat, qLon, allowed, best, probes);
+        return nearest(begin, mid, qLat, qLon, allowed, best, probes);
+    }
+    double fractionAlong(int slot, double lat, double lon) {
+        return clampedFraction(slot, lat * 1e7, lon * 1e7);
+    }
+    private double clampedFraction(int slot, double qLat, double qLon) {
+        double dy = bLatE7[slot] - (double) aLatE7[slot];
+        double dx = (bLonE7[slot] - (double) aLonE7[slot]) * lonScale;
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0.0) {
+            return 0.0;
+        }
+        double t = ((qLat - aLatE7[slot]) * dy + (qLon - aLonE7[slot]) * lonScale * dx) / lengthSquared;
+        return Math.max(0.0, Math.min(1.0, t));
+    }
+    private double distanceSquared(int slot, double qLat, double qLon) {
+        double t = clampedFraction(slot, qLat, qLon);
+        double dy = aLatE7[slot] + t * (bLatE7[slot] - (double) aLatE7[slot]) - qLat;
+        double dx = (aLonE7[slot] + t * (bLonE7[slot] - (double) aLonE7[slot]) - qLon) * lonScale;
+        return dx * dx + dy * dy;
+    }
+    private double boxDistanceSquared(int mid, double qLat, double qLon) {
+        double dy = Math.max(0.0, Math.max(boxMinLat[mid] - qLat, qLat - boxMaxLat[mid]));
+        double dx = Math.max(0.0, Math.max(boxMinLon[mid] - qLon, qLon - boxMaxLon[mid])) * lonScale;
+        return dx * dx + dy * dy;
+    }
+    private void computeBoxes(int begin, int end) {
+        if (begin >= end) {
+            return;
+        }
+        int mid = (begin + end) >>> 1;
+        boxMinLat[mid] = Integer.MAX_VALUE;
+        boxMaxLat[mid] = Integer.MIN_VALUE;
+        boxMinLon[mid] = Integer.MAX_VALUE;
+        boxMaxLon[mid] = Integer.MIN_VALUE;
+        if (end - begin <= LEAF_SIZE) {
+            for (int i = begin; i < end; i++) {
+                includeSegment(mid, i);
+            }
+            return;
+        }
+        computeBoxes(begin, mid);
+        computeBoxes(mid + 1, end);
+        includeSegment(mid, mid);
+        includeBox(mid, (begin + mid) >>> 1);
+        includeBox(mid, (mid + 1 + end) >>> 1);
+    }
+    private void includeSegment(int box, int slot) {
+        boxMinLat[box] = Math.min(boxMinLat[box], Math.min(aLatE7[slot], bLatE7[slot]));
+        boxMaxLat[box] = Math.max(boxMaxLat[box], Math.max(aLatE7[slot], bLatE7[slot]));
+        boxMinLon[box] = Math.min(boxMinLon[box], Math.min(aLonE7[slot], bLonE7[slot]));
+        boxMaxLon[box] = Math.max(boxMaxLon[box], Math.max(aLonE7[slot], bLonE7[slot]));
+    }
+    private void includeBox(int box, int child) {
+        boxMinLat[box] = Math.min(boxMinLat[box], boxMinLat[child]);
+        boxMaxLat[box] = Math.max(boxMaxLat[box], boxMaxLat[child]);
+        boxMinLon[box] = Math.min(boxMinLon[box], boxMinLon[child]);
+        boxMaxLon[box] = Math.max(boxMaxLon[box], boxMaxLon[child]);
+    }
+    private byte longerAxis(int begin, int end) {
+        long minLat = Long.MAX_VALUE;
+        long maxLat = Long.MIN_VALUE;
+        long minLon = Long.MAX_VALUE;
+        long maxLon = Long.MIN_VALUE;
+        for (int i = begin; i < end; i++) {
+            minLat = Math.min(minLat, centerLat(i));
+            maxLat = Math.max(maxLat, centerLat(i));
+            minLon = Math.min(minLon, centerLon(i));
+            maxLon = Math.max(maxLon, centerLon(i));
+        }
+        return (double) maxLat - minLat >= ((double) maxLon - minLon) * lonScale ? (byte) 0 : (byte) 1;
+    }
+    private void select(int begin, int end, int k, byte splitAxis) {
+        int lo = begin;
+        int hi = end - 1;
+        while (lo < hi) {
+            long pivot = key((lo + hi) >>> 1, splitAxis);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key(i, splitAxis) < pivot) {
+                    i++;
+                }
+                while (key(j, splitAxis) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+    private long key(int i, byte splitAxis) {
+        return splitAxis == 0 ? centerLat(i) : centerLon(i);
+    }
+    private long centerLat(int i) {
+        return (long) aLatE7[i] + bLatE7[i];
+    }
+    private long centerLon(int i) {
+        return (long) aLonE7[i] + bLonE7[i];
+    }
+    private void swap(int a, int b) {
+        swap(aLatE7, a, b);
+        swap(aLonE7, a, b);
+        swap(bLatE7, a, b);
+        swap(bLonE7, a, b);
+        swap(item, a, b);
+        swap(part, a, b);
+    }
+    private static void swap(int[] values, int a, int b) {
+        int t = values[a];
+        values[a] = values[b];
+        values[b] = t;
+    }
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(item.length);
+        out.writeDouble(lonScale);
+        for (int i = 0; i < item.length; i++) {
+            out.writeInt(aLatE7[i]);
+            out.writeInt(aLonE7[i]);
+            out.writeInt(bLatE7[i]);
+            out.writeInt(bLonE7[i]);
+            out.writeInt(item[i]);
+            out.writeInt(part[i]);
+        }
+    }
+    static SpatialIndex read(DataInputStream in, int itemLimit) throws IOException {
+        int n = in.readInt();
+        double lonScale = in.readDouble();
+        if (n < 0 || !(lonScale > 0.0)) {
+            throw new IOException("Corrupt spatial index in cache");
+        }
+        int[] aLatE7 = new int[n];
+        int[] aLonE7 = new int[n];
+        int[] bLatE7 = new int[n];
+        int[] bLonE7 = new int[n];
+        int[] item = new int[n];
+        int[] part = new int[n];
+        for (int i = 0; i < n; i++) {
+            aLatE7[i] = in.readInt();
+            aLonE7[i] = in.readInt();
+            bLatE7[i] = in.readInt();
+            bLonE7[i] = in.readInt();
+            item[i] = in.readInt();
+            part[i] = in.readInt();
+            if (item[i] < 0 || item[i] >= itemLimit || part[i] < 0) {
+                throw new IOException("Corrupt spatial index in cache");
+            }
+        }
+        SpatialIndex index = new SpatialIndex(aLatE7, aLonE7, bLatE7, bLonE7, item, part, lonScale);
+        index.computeBoxes(0, n);
+        return index;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.hanoimap;
+record VirtualNode(int[] nodes, double[] cost) {
+    int size() {
+        return nodes.length;
+    }
+    double costAt(int node) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] == node) {
+                return cost[i];
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.hanoimap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+final class WorkerPool implements AutoCloseable {
+    private final ExecutorService executor;
+    private final int workers;
+    WorkerPool(String threadName) {
+        this(threadName, Runtime.getRuntime().availableProcessors());
+    }
+    WorkerPool(String threadName, int workers) {
+        this.workers = Math.max(1, workers);
+        this.executor = Executors.newFixedThreadPool(this.workers, r -> {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+    int workers() {
+        return workers;
+    }
+    void forEach(int count, int chunkSize, Task task) {
+        if (count == 0) {
+            return;
+        }
+        if (workers == 1 || count <= chunkSize) {
+            for (int i = 0; i < count; i++) {
+                task.run(0, i);
+            }
+            return;
+        }
+        AtomicInteger cursor = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int t = 0; t < workers; t++) {
+            int worker = t;
+            futures.add(executor.submit(() -> {
+                while (true) {
+                    int begin = cursor.getAndAdd(chunkSize);
+                    if (begin >= count) {
+                        return;
+                    }
+                    int end = Math.min(begin + chunkSize, count);
+                    try {
+                        for (int i = begin; i < end; i++) {
+                            task.run(worker, i);
+                        }
+                    } catch (Throwable e) {
+                        cursor.set(count);
+                        throw e;
+                    }
+                }
+            }));
+        }
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Future<?> f : futures) {
+            while (true) {
+                try {
+                    f.get();
+                    break;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof RuntimeException e) {
+            throw e;
+        }
+        if (failure instanceof Error e) {
+            throw e;
+        }
+        if (failure != null) {
+            throw new RuntimeException("Parallel task failed: " + failure.getMessage(), failure);
+        }
+    }
+    void execute(Runnable task) {
+        executor.execute(task);
+    }
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+    @FunctionalInterface
+    interface Task {
+        void run(int worker, int index);
+    }
+}
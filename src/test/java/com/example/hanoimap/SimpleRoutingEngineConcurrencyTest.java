@@ -0,0 +1,81 @@
+package com.example.hanoimap;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+final class SimpleRoutingEngineConcurrencyTest {
+    private static final int QUERIES = 200;
+    private static final int ROUNDS = 5;
+    private static final int THREADS = 8;
+    @TempDir
+    Path cacheDir;
+    @ParameterizedTest
+    @EnumSource(SimpleRoutingEngine.SearchMode.class)
+    void parallelQueriesMatchSequentialQueries(SimpleRoutingEngine.SearchMode mode) throws Exception {
+        String pbf = Path.of(getClass().getResource("/grid.osm.pbf").toURI()).toString();
+        SimpleRoutingEngine engine = new SimpleRoutingEngine(pbf, cacheDir.toString(), mode);
+        engine.init();
+        Random random = new Random(42);
+        List<LatLon[]> queries = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++) {
+            queries.add(new LatLon[] {
+                    new LatLon(21.0 + random.nextDouble() * 0.011, 105.8 + random.nextDouble() * 0.011),
+                    new LatLon(21.0 + random.nextDouble() * 0.011, 105.8 + random.nextDouble() * 0.011)
+            });
+        }
+        double[] expectedRoute = new double[QUERIES];
+        double[] expectedDistance = new double[QUERIES];
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            expectedRoute[i] = routeLength(engine, queries.get(i));
+            expectedDistance[i] = engine.distanceMeters(queries.get(i)[0], queries.get(i)[1]);
+            if (expectedRoute[i] > 0) {
+                found++;
+            }
+        }
+        assertTrue(found > QUERIES / 2, "only " + found + " of " + QUERIES + " queries found a route");
+        List<Integer> order = new ArrayList<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < QUERIES; i++) {
+                order.add(i);
+            }
+        }
+        Collections.shuffle(order, random);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<double[]>> results = new ArrayList<>();
+            for (int i : order) {
+                LatLon[] query = queries.get(i);
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return new double[] {routeLength(engine, query), engine.distanceMeters(query[0], query[1])};
+                }));
+            }
+            start.countDown();
+            for (int k = 0; k < order.size(); k++) {
+                int i = order.get(k);
+                double[] actual = results.get(k).get(60, TimeUnit.SECONDS);
+                assertEquals(expectedRoute[i], actual[0], 0.0, "route length of query " + i);
+                assertEquals(expectedDistance[i], actual[1], 0.0, "distance of query " + i);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    private static double routeLength(SimpleRoutingEngine engine, LatLon[] query) {
+        List<LatLon> path = engine.route(query[0].lat(), query[0].lon(), query[1].lat(), query[1].lon());
+        return path.isEmpty() ? 0 : RouteGeometry.lengthMeters(path);
+    }
+}